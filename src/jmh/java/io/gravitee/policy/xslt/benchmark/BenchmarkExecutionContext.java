@@ -0,0 +1,101 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xslt.benchmark;
+
+import io.gravitee.el.TemplateContext;
+import io.gravitee.el.TemplateEngine;
+import io.gravitee.gateway.api.ExecutionContext;
+import io.gravitee.gateway.api.Request;
+import io.gravitee.gateway.api.Response;
+
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Minimal execution context: the template engine returns stylesheets and parameter expressions unchanged, so that
+ * the benchmarks measure the policy and not the expression language.
+ *
+ * @author GraviteeSource Team
+ */
+class BenchmarkExecutionContext implements ExecutionContext {
+
+    private final Map<String, Object> attributes = new HashMap<>();
+
+    private final TemplateEngine templateEngine = new TemplateEngine() {
+        @Override
+        public String convert(String expression) {
+            return expression;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T getValue(String expression, Class<T> clazz) {
+            return (T) expression;
+        }
+
+        @Override
+        public TemplateContext getTemplateContext() {
+            return null;
+        }
+    };
+
+    @Override
+    public Request request() {
+        return null;
+    }
+
+    @Override
+    public Response response() {
+        return null;
+    }
+
+    @Override
+    public <T> T getComponent(Class<T> componentClass) {
+        return null;
+    }
+
+    @Override
+    public void setAttribute(String name, Object value) {
+        attributes.put(name, value);
+    }
+
+    @Override
+    public void removeAttribute(String name) {
+        attributes.remove(name);
+    }
+
+    @Override
+    public Object getAttribute(String name) {
+        return attributes.get(name);
+    }
+
+    @Override
+    public Enumeration<String> getAttributeNames() {
+        return Collections.enumeration(attributes.keySet());
+    }
+
+    @Override
+    public Map<String, Object> getAttributes() {
+        return attributes;
+    }
+
+    @Override
+    public TemplateEngine getTemplateEngine() {
+        return templateEngine;
+    }
+}
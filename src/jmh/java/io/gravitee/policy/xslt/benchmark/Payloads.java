@@ -0,0 +1,65 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xslt.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @author GraviteeSource Team
+ */
+final class Payloads {
+
+    private static final String[] COUNTRIES = {"USA", "UK", "EU", "Norway"};
+
+    private Payloads() {
+    }
+
+    /**
+     * Generates a catalog document of approximately the given size, in bytes.
+     */
+    static String catalog(int size) {
+        StringBuilder xml = new StringBuilder(size + 256);
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<catalog>\n");
+
+        for (int i = 0; xml.length() < size; i++) {
+            xml.append("    <cd id=\"").append(i).append("\">\n")
+                    .append("        <title>Title ").append(i).append("</title>\n")
+                    .append("        <artist>Artist ").append(i % 1000).append("</artist>\n")
+                    .append("        <country>").append(COUNTRIES[i % COUNTRIES.length]).append("</country>\n")
+                    .append("        <company>Company ").append(i % 100).append("</company>\n")
+                    .append("        <price>").append(5 + (i % 10)).append(".90</price>\n")
+                    .append("        <year>").append(1970 + (i % 50)).append("</year>\n")
+                    .append("    </cd>\n");
+        }
+
+        return xml.append("</catalog>\n").toString();
+    }
+
+    static String resource(String name) throws IOException {
+        try (InputStream is = Payloads.class.getResourceAsStream(name)) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = is.read(buffer)) != -1) {
+                baos.write(buffer, 0, read);
+            }
+            return new String(baos.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
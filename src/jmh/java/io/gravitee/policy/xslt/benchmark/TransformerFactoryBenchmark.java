@@ -0,0 +1,64 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xslt.benchmark;
+
+import io.gravitee.policy.xslt.transformer.CompiledStylesheet;
+import io.gravitee.policy.xslt.transformer.TransformerFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the lookup of an already compiled stylesheet, which is what requests pay when the stylesheet contains
+ * EL expressions and can not be precompiled.
+ *
+ * @author GraviteeSource Team
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TransformerFactoryBenchmark {
+
+    @Param({"simple", "complex"})
+    private String stylesheet;
+
+    private String xslt;
+
+    @Setup
+    public void setup() throws Exception {
+        // Copy the content, so that lookups can not rely on the identity of the stylesheet
+        xslt = new String(Payloads.resource(stylesheet + ".xsl").toCharArray());
+        TransformerFactory.getInstance().getTemplate(xslt);
+    }
+
+    @Benchmark
+    public CompiledStylesheet getTemplate() throws Exception {
+        return TransformerFactory.getInstance().getTemplate(xslt);
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xslt.benchmark;
+
+import io.gravitee.gateway.api.buffer.Buffer;
+import io.gravitee.policy.xslt.XSLTTransformationPolicy;
+import io.gravitee.policy.xslt.configuration.XSLTParameter;
+import io.gravitee.policy.xslt.configuration.XSLTTransformationPolicyConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Measures the request / response body transformation, as applied by the gateway stream.
+ *
+ * Payload sizes go from 1 KB to 100 MB, use <code>-p payloadSize=...</code> to restrict them and <code>-t</code> to
+ * run with several threads.
+ *
+ * @author GraviteeSource Team
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class XSLTTransformationPolicyBenchmark {
+
+    @Param({"1024", "102400", "10485760", "104857600"})
+    private int payloadSize;
+
+    @Param({"simple", "complex"})
+    private String stylesheet;
+
+    @Param({"false", "true"})
+    private boolean parameters;
+
+    private Buffer payload;
+
+    private Function<Buffer, Buffer> transformation;
+
+    @Setup
+    public void setup() throws Exception {
+        XSLTTransformationPolicyConfiguration configuration = new XSLTTransformationPolicyConfiguration();
+        configuration.setStylesheet(Payloads.resource(stylesheet + ".xsl"));
+
+        List<XSLTParameter> xsltParameters = new ArrayList<>();
+        if (parameters) {
+            xsltParameters.add(parameter("title", "Benchmark collection"));
+            xsltParameters.add(parameter("country", "UK"));
+        }
+        configuration.setParameters(xsltParameters);
+
+        transformation = new XSLTTransformationPolicy(configuration).toXSLT(new BenchmarkExecutionContext());
+        payload = Buffer.buffer(Payloads.catalog(payloadSize));
+    }
+
+    @Benchmark
+    public Buffer transform() {
+        return transformation.apply(payload);
+    }
+
+    private static XSLTParameter parameter(String name, String value) {
+        XSLTParameter parameter = new XSLTParameter();
+        parameter.setName(name);
+        parameter.setValue(value);
+        return parameter;
+    }
+}
@@ -0,0 +1,64 @@
+<?xml version="1.0" encoding="UTF-8"?>
+<!--
+
+    Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+            http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+-->
+<xsl:stylesheet version="2.0"
+                xmlns:xsl="http://www.w3.org/1999/XSL/Transform"
+                xmlns:xs="http://www.w3.org/2001/XMLSchema"
+                exclude-result-prefixes="xs xsl">
+
+    <xsl:output method="xml" encoding="UTF-8" indent="no"/>
+
+    <xsl:param name="title" select="'My CD Collection'"/>
+    <xsl:param name="country" select="''"/>
+
+    <xsl:key name="cd-by-country" match="cd" use="country"/>
+
+    <xsl:template match="/catalog">
+        <collection name="{$title}">
+            <xsl:for-each-group select="cd[$country = '' or country = $country]" group-by="country">
+                <xsl:sort select="current-grouping-key()"/>
+                <country code="{current-grouping-key()}" count="{count(key('cd-by-country', current-grouping-key()))}"
+                         total="{format-number(sum(current-group()/price), '0.00')}">
+                    <xsl:apply-templates select="current-group()">
+                        <xsl:sort select="xs:integer(year)" order="descending"/>
+                    </xsl:apply-templates>
+                </country>
+            </xsl:for-each-group>
+        </collection>
+    </xsl:template>
+
+    <!-- template to copy elements -->
+    <xsl:template match="*">
+        <xsl:if test="normalize-space(string(.)) != ''">
+            <xsl:element name="{lower-case(local-name())}">
+                <xsl:apply-templates select="@* | node()"/>
+            </xsl:element>
+        </xsl:if>
+    </xsl:template>
+
+    <!-- template to copy attributes -->
+    <xsl:template match="@*">
+        <xsl:attribute name="{local-name()}">
+            <xsl:value-of select="."/>
+        </xsl:attribute>
+    </xsl:template>
+
+    <xsl:template match="comment() | text() | processing-instruction()">
+        <xsl:copy/>
+    </xsl:template>
+</xsl:stylesheet>
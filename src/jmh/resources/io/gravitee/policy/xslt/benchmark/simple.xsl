@@ -0,0 +1,33 @@
+<?xml version="1.0" encoding="UTF-8"?>
+<!--
+
+    Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+            http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+-->
+<xsl:stylesheet version="2.0" xmlns:xsl="http://www.w3.org/1999/XSL/Transform">
+
+    <xsl:output method="xml" encoding="UTF-8" indent="no"/>
+
+    <xsl:param name="title" select="'My CD Collection'"/>
+    <xsl:param name="country" select="''"/>
+
+    <xsl:template match="/">
+        <collection name="{$title}">
+            <xsl:for-each select="catalog/cd[$country = '' or country = $country]">
+                <cd title="{title}" artist="{artist}"/>
+            </xsl:for-each>
+        </collection>
+    </xsl:template>
+</xsl:stylesheet>
@@ -0,0 +1,244 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xslt;
+
+import io.gravitee.policy.xslt.configuration.XSLTTransformationPolicyConfiguration;
+import io.gravitee.policy.xslt.filter.ContentFilter;
+import io.gravitee.policy.xslt.limit.SourceLimits;
+import io.gravitee.policy.xslt.transformer.CompiledStylesheet;
+import io.gravitee.policy.xslt.transformer.ReferenceDocuments;
+import io.gravitee.policy.xslt.transformer.StylesheetParameters;
+import io.gravitee.policy.xslt.transformer.TransformerFactory;
+import io.gravitee.policy.xslt.utils.WeakIdentityMap;
+import net.sf.saxon.s9api.QName;
+import net.sf.saxon.s9api.SaxonApiException;
+import net.sf.saxon.s9api.XdmNode;
+import net.sf.saxon.s9api.XdmValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.transform.URIResolver;
+import javax.xml.transform.stream.StreamSource;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The state derived from a policy configuration: selected and pipeline stylesheets, parameters, reference documents,
+ * content filter and source limits.
+ *
+ * Policies are created for each request, while the gateway keeps the same configuration instance: the state is built
+ * by the first request reaching the configuration and shared by the next ones, instead of being built again for each
+ * of them. It is kept as long as the configuration itself, and must therefore never refer to it.
+ *
+ * @author GraviteeSource Team
+ */
+class ConfiguredPolicy {
+
+    private final Logger LOGGER = LoggerFactory.getLogger(ConfiguredPolicy.class);
+
+    /**
+     * Sample document on which the stylesheets are warmed up, when none is configured
+     */
+    private static final String WARMUP_DOCUMENT = "<warmup/>";
+
+    /**
+     * Warm-ups run one at a time on their own low priority thread, so that they never take a worker, or a queue slot,
+     * from the transformations of the requests
+     */
+    private static final ExecutorService WARMUP = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "gio-xslt-warmup");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    /**
+     * Looked up by every request, on every event loop: lookups must not contend on a lock
+     */
+    private static final WeakIdentityMap<XSLTTransformationPolicyConfiguration, ConfiguredPolicy> POLICIES =
+            new WeakIdentityMap<>();
+
+    /**
+     * Failures to build the state, such as invalid stylesheets, rethrown to the next requests instead of compiling the
+     * stylesheets again. They are forgotten as soon as a shared stylesheet module is updated, which may fix them.
+     */
+    private static final WeakIdentityMap<XSLTTransformationPolicyConfiguration, RuntimeException> FAILURES =
+            new WeakIdentityMap<>();
+
+    static {
+        if (TransformerFactory.getInstance().getRepository() != null) {
+            TransformerFactory.getInstance().getRepository().addListener(module -> FAILURES.clear());
+        }
+    }
+
+    private final StylesheetSelector stylesheets;
+
+    /**
+     * Stylesheets applied in order to the result of the selected stylesheet
+     */
+    private final List<ConfiguredStylesheet> pipeline = new ArrayList<>();
+
+    private final StylesheetParameters parameters;
+
+    private final ReferenceDocuments documents;
+
+    private final ContentFilter filter;
+
+    private final SourceLimits limits;
+
+    private ConfiguredPolicy(XSLTTransformationPolicyConfiguration configuration) {
+        this.stylesheets = new StylesheetSelector(configuration);
+        if (configuration.getPipeline() != null) {
+            for (String stage : configuration.getPipeline()) {
+                pipeline.add(new ConfiguredStylesheet(stage));
+            }
+        }
+        this.parameters = StylesheetParameters.of(configuration.getParameters());
+        this.documents = ReferenceDocuments.of(configuration.getDocuments());
+        this.filter = ContentFilter.of(configuration);
+        this.limits = SourceLimits.of(configuration);
+    }
+
+    /**
+     * The state is built outside of any lock, so that a stylesheet being compiled does not hold back the requests of
+     * other configurations. Concurrent first requests may build it more than once, only one of them being kept: the
+     * compiled stylesheets themselves are shared through the template cache.
+     */
+    static ConfiguredPolicy of(XSLTTransformationPolicyConfiguration configuration) {
+        ConfiguredPolicy policy = POLICIES.get(configuration);
+        if (policy == null) {
+            RuntimeException failure = FAILURES.get(configuration);
+            if (failure != null) {
+                throw failure;
+            }
+
+            try {
+                policy = new ConfiguredPolicy(configuration);
+            } catch (RuntimeException ex) {
+                FAILURES.putIfAbsent(configuration, ex);
+                throw ex;
+            }
+            ConfiguredPolicy existing = POLICIES.putIfAbsent(configuration, policy);
+            if (existing != null) {
+                policy = existing;
+            } else if (configuration.getWarmupIterations() > 0) {
+                policy.warmUp(warmupDocument(configuration), configuration.getWarmupIterations());
+            }
+        }
+
+        return policy;
+    }
+
+    /**
+     * Stylesheets are warmed up in background, on the warm-up thread, so that the request creating the state is not
+     * held back: the requests arriving meanwhile run on stylesheets which are not warmed up yet. Stylesheets depending
+     * on the request, through expression language, can not be warmed up. They are applied with the constant
+     * parameters and the reference documents, as the requests would.
+     */
+    private void warmUp(String document, int iterations) {
+        List<CompiledStylesheet> templates = new ArrayList<>();
+        List<ConfiguredStylesheet> configured = stylesheets.getStylesheets();
+        configured.addAll(pipeline);
+        for (ConfiguredStylesheet stylesheet : configured) {
+            CompiledStylesheet template = stylesheet.getPrecompiled();
+            if (template != null && !template.isWarmedUp()) {
+                templates.add(template);
+            }
+        }
+
+        if (templates.isEmpty()) {
+            return;
+        }
+
+        Map<QName, XdmValue> values = parameters.getConstants();
+        URIResolver resolver = documents.isEmpty() ? null : documents;
+
+        WARMUP.execute(() -> {
+            TransformerFactory factory = TransformerFactory.getInstance();
+            XdmNode sample;
+            try {
+                sample = factory.getProcessor().newDocumentBuilder().build(new StreamSource(new StringReader(document)));
+            } catch (SaxonApiException ex) {
+                LOGGER.warn("Unable to parse XSL warm-up document: {}", ex.getMessage());
+                return;
+            }
+
+            long nanos = 0;
+            for (CompiledStylesheet template : templates) {
+                try {
+                    nanos += factory.warmUp(template, sample, values, resolver, iterations);
+                } catch (SaxonApiException | RuntimeException ex) {
+                    LOGGER.warn("Unable to warm up XSL stylesheet: {}", ex.getMessage());
+                }
+            }
+
+            if (nanos > 0) {
+                LOGGER.info("XSL stylesheets warmed up in {} ms ({} iterations)", TimeUnit.NANOSECONDS.toMillis(nanos),
+                        iterations);
+            }
+        });
+    }
+
+    /**
+     * @return the configured sample document, or an empty document with the first expected root element.
+     */
+    private static String warmupDocument(XSLTTransformationPolicyConfiguration configuration) {
+        if (configuration.getWarmupDocument() != null) {
+            return configuration.getWarmupDocument();
+        }
+
+        List<String> rootElements = configuration.getRootElements();
+        if (rootElements == null || rootElements.isEmpty()) {
+            return WARMUP_DOCUMENT;
+        }
+
+        // Clark name: {namespace-uri}local-name
+        String rootElement = rootElements.get(0);
+        int end = rootElement.indexOf('}');
+        return rootElement.startsWith("{") && end > 0
+                ? "<" + rootElement.substring(end + 1) + " xmlns=\"" + rootElement.substring(1, end) + "\"/>"
+                : "<" + rootElement + "/>";
+    }
+
+    StylesheetSelector getStylesheets() {
+        return stylesheets;
+    }
+
+    List<ConfiguredStylesheet> getPipeline() {
+        return pipeline;
+    }
+
+    StylesheetParameters getParameters() {
+        return parameters;
+    }
+
+    ReferenceDocuments getDocuments() {
+        return documents;
+    }
+
+    ContentFilter getFilter() {
+        return filter;
+    }
+
+    SourceLimits getLimits() {
+        return limits;
+    }
+}
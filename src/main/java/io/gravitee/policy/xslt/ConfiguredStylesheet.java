@@ -0,0 +1,160 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xslt;
+
+import io.gravitee.gateway.api.ExecutionContext;
+import io.gravitee.gateway.api.stream.exception.TransformationException;
+import io.gravitee.policy.xslt.metrics.TransformationErrors;
+import io.gravitee.policy.xslt.metrics.TransformationMetrics;
+import io.gravitee.policy.xslt.metrics.TransformationMetrics.Phase;
+import io.gravitee.policy.xslt.transformer.CompiledStylesheet;
+import io.gravitee.policy.xslt.transformer.TransformerFactory;
+
+/**
+ * A stylesheet of the policy configuration. A stylesheet without any expression language is compiled once for all,
+ * by the first request reaching the configuration, others are evaluated and looked up in the compiled stylesheet
+ * cache for each transformation.
+ *
+ * @author GraviteeSource Team
+ */
+class ConfiguredStylesheet {
+
+    private static final String EXPRESSION_PREFIX = "{#";
+
+    private final String stylesheet;
+
+    /**
+     * Compiled stylesheet, when it does not contain any expression language and can be compiled once for all. It is
+     * compiled again when one of its shared modules is updated.
+     */
+    private volatile CompiledStylesheet precompiledTemplate;
+
+    private final String precompiledKey;
+
+    /**
+     * Last converted stylesheet and its key, so that hashing is skipped when the template engine returns the same
+     * instance again, such as the configured stylesheet itself
+     */
+    private volatile KeyedStylesheet lastStylesheet;
+
+    ConfiguredStylesheet(String stylesheet) {
+        this.stylesheet = stylesheet;
+        this.precompiledKey = precompilable(stylesheet) ? TransformerFactory.key(stylesheet) : null;
+        this.precompiledTemplate = (precompiledKey != null) ? precompile(precompiledKey, stylesheet) : null;
+    }
+
+    /**
+     * @return the stylesheet compiled up front, or <code>null</code> if it depends on the request.
+     */
+    CompiledStylesheet getPrecompiled() {
+        return precompiledTemplate;
+    }
+
+    CompiledStylesheet get(ExecutionContext executionContext, TransformationMetrics metrics) throws Exception {
+        long start = System.nanoTime();
+
+        CompiledStylesheet template = precompiledTemplate;
+        if (template == null) {
+            // Get XSL stylesheet and transform it using internal template engine
+            String converted;
+            try {
+                converted = executionContext.getTemplateEngine().convert(stylesheet);
+            } catch (RuntimeException ex) {
+                metrics.failed(TransformationErrors.Cause.EXPRESSION);
+                throw ex;
+            }
+            start = metrics.record(Phase.CONVERT, start);
+
+            String key = key(converted);
+            stylesheet(metrics, key);
+            start = metrics.record(Phase.HASH, start);
+
+            template = compile(key, converted, false, metrics);
+            metrics.record(Phase.COMPILE, start);
+        } else {
+            stylesheet(metrics, precompiledKey);
+
+            if (template.isStale()) {
+                template = compile(precompiledKey, stylesheet, true, metrics);
+                precompiledTemplate = template;
+                metrics.record(Phase.COMPILE, start);
+            }
+        }
+
+        return template;
+    }
+
+    /**
+     * Metrics report the first stylesheet of a pipeline.
+     */
+    private static void stylesheet(TransformationMetrics metrics, String key) {
+        if (metrics.getStylesheet() == null) {
+            metrics.setStylesheet(key);
+        }
+    }
+
+    /**
+     * @param persistent <code>true</code> for a stylesheet without any expression language, the only ones kept by the
+     *                   stylesheet store: converted stylesheets may differ for each request.
+     */
+    private static CompiledStylesheet compile(String key, String stylesheet, boolean persistent,
+                                              TransformationMetrics metrics) throws Exception {
+        try {
+            return TransformerFactory.getInstance().getTemplate(key, stylesheet, persistent);
+        } catch (Exception ex) {
+            metrics.failed(TransformationErrors.Cause.COMPILE);
+            throw ex;
+        }
+    }
+
+    private String key(String stylesheet) {
+        KeyedStylesheet last = lastStylesheet;
+        if (last != null && last.stylesheet == stylesheet) {
+            return last.key;
+        }
+
+        String key = TransformerFactory.key(stylesheet);
+        lastStylesheet = new KeyedStylesheet(stylesheet, key);
+        return key;
+    }
+
+    /**
+     * A stylesheet containing expression language depends on the execution context, it is compiled on the request path.
+     */
+    private static boolean precompilable(String stylesheet) {
+        return stylesheet != null && !stylesheet.contains(EXPRESSION_PREFIX);
+    }
+
+    private static CompiledStylesheet precompile(String key, String stylesheet) {
+        try {
+            return TransformerFactory.getInstance().getTemplate(key, stylesheet, true);
+        } catch (Exception ex) {
+            throw new TransformationException("Unable to compile XSL stylesheet: " + ex.getMessage(), ex);
+        }
+    }
+
+    private static class KeyedStylesheet {
+
+        private final String stylesheet;
+
+        private final String key;
+
+        KeyedStylesheet(String stylesheet, String key) {
+            this.stylesheet = stylesheet;
+            this.key = key;
+        }
+    }
+}
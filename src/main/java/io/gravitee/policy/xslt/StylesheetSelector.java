@@ -0,0 +1,180 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xslt;
+
+import io.gravitee.common.http.HttpHeaders;
+import io.gravitee.gateway.api.ExecutionContext;
+import io.gravitee.policy.xslt.configuration.ConditionalStylesheet;
+import io.gravitee.policy.xslt.configuration.XSLTTransformationPolicyConfiguration;
+import net.sf.saxon.s9api.Axis;
+import net.sf.saxon.s9api.XdmItem;
+import net.sf.saxon.s9api.XdmNode;
+import net.sf.saxon.s9api.XdmNodeKind;
+import net.sf.saxon.s9api.XdmSequenceIterator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Selects the stylesheet applied to a document: the first conditional stylesheet matching the request and the
+ * document, or the default stylesheet.
+ *
+ * @author GraviteeSource Team
+ */
+class StylesheetSelector {
+
+    private static final String SOAP_ACTION_HEADER = "SOAPAction";
+
+    private static final String SOAP_ACTION_PARAMETER = "action=";
+
+    private final List<Route> routes = new ArrayList<>();
+
+    private final ConfiguredStylesheet defaultStylesheet;
+
+    private final boolean selectsOnDocument;
+
+    StylesheetSelector(XSLTTransformationPolicyConfiguration configuration) {
+        if (configuration.getStylesheets() != null) {
+            for (ConditionalStylesheet conditional : configuration.getStylesheets()) {
+                routes.add(new Route(conditional, new ConfiguredStylesheet(conditional.getStylesheet())));
+            }
+        }
+
+        this.selectsOnDocument = routes.stream().anyMatch(route -> route.conditional.getRootElement() != null);
+
+        // Without any conditional stylesheet, the default one is mandatory
+        this.defaultStylesheet = (routes.isEmpty() || configuration.getStylesheet() != null) ?
+                new ConfiguredStylesheet(configuration.getStylesheet()) : null;
+    }
+
+    /**
+     * @return all the stylesheets which can be selected.
+     */
+    List<ConfiguredStylesheet> getStylesheets() {
+        List<ConfiguredStylesheet> stylesheets = new ArrayList<>();
+        for (Route route : routes) {
+            stylesheets.add(route.stylesheet);
+        }
+        if (defaultStylesheet != null) {
+            stylesheets.add(defaultStylesheet);
+        }
+        return stylesheets;
+    }
+
+    /**
+     * @return <code>true</code> if no stylesheet may match, without any default stylesheet.
+     */
+    boolean mayNotMatch() {
+        return defaultStylesheet == null;
+    }
+
+    /**
+     * @return <code>true</code> if the document must be given to {@link #select(ExecutionContext, XdmNode)}.
+     */
+    boolean selectsOnDocument() {
+        return selectsOnDocument;
+    }
+
+    /**
+     * @param document the source document, only required when {@link #selectsOnDocument()}.
+     * @return the stylesheet to apply, or <code>null</code> if none matches.
+     */
+    ConfiguredStylesheet select(ExecutionContext executionContext, XdmNode document) {
+        String rootElement = null;
+        for (Route route : routes) {
+            ConditionalStylesheet conditional = route.conditional;
+
+            if (conditional.getSoapAction() != null && !conditional.getSoapAction().equals(soapAction(executionContext))) {
+                continue;
+            }
+
+            if (conditional.getRootElement() != null) {
+                if (rootElement == null) {
+                    rootElement = rootElement(document);
+                }
+                if (!matches(conditional.getRootElement(), rootElement)) {
+                    continue;
+                }
+            }
+
+            if (conditional.getCondition() != null && !conditional.getCondition().isEmpty()
+                    && !Boolean.TRUE.equals(executionContext.getTemplateEngine().getValue(conditional.getCondition(), Boolean.class))) {
+                continue;
+            }
+
+            return route.stylesheet;
+        }
+
+        return defaultStylesheet;
+    }
+
+    private static String soapAction(ExecutionContext executionContext) {
+        if (executionContext.request() == null) {
+            return null;
+        }
+
+        HttpHeaders headers = executionContext.request().headers();
+        String action = headers.getFirst(SOAP_ACTION_HEADER);
+        if (action == null) {
+            // SOAP 1.2: application/soap+xml; action="..."
+            String contentType = headers.getFirst(HttpHeaders.CONTENT_TYPE);
+            int index = (contentType != null) ? contentType.indexOf(SOAP_ACTION_PARAMETER) : -1;
+            if (index == -1) {
+                return null;
+            }
+
+            action = contentType.substring(index + SOAP_ACTION_PARAMETER.length());
+            int end = action.indexOf(';');
+            if (end != -1) {
+                action = action.substring(0, end);
+            }
+        }
+
+        action = action.trim();
+        if (action.length() >= 2 && action.charAt(0) == '"' && action.charAt(action.length() - 1) == '"') {
+            action = action.substring(1, action.length() - 1);
+        }
+        return action;
+    }
+
+    private static String rootElement(XdmNode document) {
+        XdmSequenceIterator children = document.axisIterator(Axis.CHILD);
+        while (children.hasNext()) {
+            XdmItem child = children.next();
+            if (((XdmNode) child).getNodeKind() == XdmNodeKind.ELEMENT) {
+                return ((XdmNode) child).getNodeName().getClarkName();
+            }
+        }
+
+        return "";
+    }
+
+    private static boolean matches(String expected, String rootElement) {
+        return expected.equals(rootElement) || expected.equals(rootElement.substring(rootElement.indexOf('}') + 1));
+    }
+
+    private static class Route {
+
+        private final ConditionalStylesheet conditional;
+
+        private final ConfiguredStylesheet stylesheet;
+
+        Route(ConditionalStylesheet conditional, ConfiguredStylesheet stylesheet) {
+            this.conditional = conditional;
+            this.stylesheet = stylesheet;
+        }
+    }
+}
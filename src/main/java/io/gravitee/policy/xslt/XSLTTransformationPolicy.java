@@ -15,7 +15,7 @@
  */
 package io.gravitee.policy.xslt;
 
-import io.gravitee.common.http.MediaType;
+import io.gravitee.common.http.HttpHeaders;
 import io.gravitee.gateway.api.ExecutionContext;
 import io.gravitee.gateway.api.Request;
 import io.gravitee.gateway.api.Response;
@@ -24,26 +24,56 @@ import io.gravitee.gateway.api.http.stream.TransformableRequestStreamBuilder;
 import io.gravitee.gateway.api.http.stream.TransformableResponseStreamBuilder;
 import io.gravitee.gateway.api.stream.ReadWriteStream;
 import io.gravitee.gateway.api.stream.exception.TransformationException;
+import io.gravitee.policy.api.PolicyChain;
 import io.gravitee.policy.api.annotations.OnRequestContent;
 import io.gravitee.policy.api.annotations.OnResponseContent;
 import io.gravitee.policy.xslt.configuration.PolicyScope;
+import io.gravitee.policy.xslt.configuration.SourceParser;
 import io.gravitee.policy.xslt.configuration.XSLTTransformationPolicyConfiguration;
+import io.gravitee.policy.xslt.filter.ContentFilter;
+import io.gravitee.policy.xslt.limit.LimitExceededException;
+import io.gravitee.policy.xslt.limit.SourceLimits;
+import io.gravitee.policy.xslt.metrics.TransformationErrors;
+import io.gravitee.policy.xslt.metrics.TransformationMetrics;
+import io.gravitee.policy.xslt.metrics.TransformationMetrics.Phase;
+import io.gravitee.policy.xslt.stream.Buffers;
+import io.gravitee.policy.xslt.stream.CountingInputStream;
+import io.gravitee.policy.xslt.stream.CountingOutputStream;
+import io.gravitee.policy.xslt.stream.OffloadingTransformationStream;
+import io.gravitee.policy.xslt.stream.StreamingTransformationStream;
+import io.gravitee.policy.xslt.stream.Streams;
+import io.gravitee.policy.xslt.transformer.BlankEntityResolver;
+import io.gravitee.policy.xslt.transformer.CompiledStylesheet;
+import io.gravitee.policy.xslt.transformer.ReferenceDocuments;
+import io.gravitee.policy.xslt.transformer.StylesheetParameters;
 import io.gravitee.policy.xslt.transformer.TransformerFactory;
-import org.xml.sax.EntityResolver;
+import io.gravitee.policy.xslt.transformer.XMLReaders;
+import io.gravitee.policy.xslt.worker.TransformationExecutor;
+import io.gravitee.policy.xslt.worker.TransformationInterruptedException;
+import net.sf.saxon.Configuration;
+import net.sf.saxon.lib.ParseOptions;
+import net.sf.saxon.om.TreeModel;
+import net.sf.saxon.s9api.QName;
+import net.sf.saxon.s9api.SaxonApiException;
+import net.sf.saxon.s9api.XdmDestination;
+import net.sf.saxon.s9api.XdmNode;
+import net.sf.saxon.s9api.XdmValue;
+import net.sf.saxon.s9api.XsltTransformer;
+import net.sf.saxon.trans.XPathException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
 import org.xml.sax.XMLReader;
 
-import javax.xml.parsers.SAXParserFactory;
-import javax.xml.transform.Result;
-import javax.xml.transform.Templates;
-import javax.xml.transform.Transformer;
 import javax.xml.transform.sax.SAXSource;
-import javax.xml.transform.stream.StreamResult;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import javax.xml.transform.stream.StreamSource;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
 /**
@@ -52,22 +82,69 @@ import java.util.function.Function;
  */
 public class XSLTTransformationPolicy {
 
+    private final Logger LOGGER = LoggerFactory.getLogger(XSLTTransformationPolicy.class);
+
+    /**
+     * Capacity initially reserved for the result of a buffered transformation
+     */
+    private static final int INITIAL_OUTPUT_CAPACITY = 8192;
+
     /**
      * XSLT transformation configuration
      */
     private final XSLTTransformationPolicyConfiguration xsltTransformationPolicyConfiguration;
 
+    private final StylesheetSelector stylesheets;
+
+    /**
+     * Stylesheets applied in order to the result of the selected stylesheet
+     */
+    private final List<ConfiguredStylesheet> pipeline;
+
+    private final StylesheetParameters parameters;
+
+    private final ReferenceDocuments documents;
+
+    private final ContentFilter filter;
+
+    private final SourceLimits limits;
+
     public XSLTTransformationPolicy(final XSLTTransformationPolicyConfiguration xsltTransformationPolicyConfiguration) {
         this.xsltTransformationPolicyConfiguration = xsltTransformationPolicyConfiguration;
+
+        ConfiguredPolicy configured = ConfiguredPolicy.of(xsltTransformationPolicyConfiguration);
+        this.stylesheets = configured.getStylesheets();
+        this.pipeline = configured.getPipeline();
+        this.parameters = configured.getParameters();
+        this.documents = configured.getDocuments();
+        this.filter = configured.getFilter();
+        this.limits = configured.getLimits();
     }
 
     @OnResponseContent
-    public ReadWriteStream onResponseContent(Response response, ExecutionContext executionContext) {
+    public ReadWriteStream onResponseContent(Response response, ExecutionContext executionContext, PolicyChain policyChain) {
         if (xsltTransformationPolicyConfiguration.getScope() == null || xsltTransformationPolicyConfiguration.getScope() == PolicyScope.RESPONSE) {
+            if (!filter.acceptsStatus(response.status()) || !filter.acceptsHeaders(response.headers())) {
+                // Content is passed through untouched
+                return null;
+            }
+
+            if (xsltTransformationPolicyConfiguration.isStreaming()) {
+                return new StreamingTransformationStream(response.headers(), policyChain,
+                        (input, output) -> transformIfAccepted(executionContext, response.headers(), input, output), limits,
+                        stylesheets.mayNotMatch());
+            }
+
+            if (xsltTransformationPolicyConfiguration.getOffloadThreshold() > 0 || limits.isEnabled()) {
+                return new OffloadingTransformationStream(response.headers(), policyChain,
+                        toXSLT(executionContext, response.headers()), TransformationExecutor.getInstance(),
+                        offloadThreshold(), xsltTransformationPolicyConfiguration.getOffloadTimeout(), limits);
+            }
+
+            // Content type is set by the transformation, depending on the stylesheet output encoding
             return TransformableResponseStreamBuilder
                     .on(response)
-                    .contentType(MediaType.APPLICATION_XML)
-                    .transform(toXSLT(executionContext))
+                    .transform(toXSLT(executionContext, response.headers()))
                     .build();
         }
 
@@ -75,67 +152,246 @@ public class XSLTTransformationPolicy {
     }
 
     @OnRequestContent
-    public ReadWriteStream onRequestContent(Request request, ExecutionContext executionContext) {
+    public ReadWriteStream onRequestContent(Request request, ExecutionContext executionContext, PolicyChain policyChain) {
         if (xsltTransformationPolicyConfiguration.getScope() == PolicyScope.REQUEST) {
+            if (!filter.acceptsHeaders(request.headers())) {
+                // Content is passed through untouched
+                return null;
+            }
+
+            if (xsltTransformationPolicyConfiguration.isStreaming()) {
+                return new StreamingTransformationStream(request.headers(), policyChain,
+                        (input, output) -> transformIfAccepted(executionContext, request.headers(), input, output), limits,
+                        stylesheets.mayNotMatch());
+            }
+
+            if (xsltTransformationPolicyConfiguration.getOffloadThreshold() > 0 || limits.isEnabled()) {
+                return new OffloadingTransformationStream(request.headers(), policyChain,
+                        toXSLT(executionContext, request.headers()), TransformationExecutor.getInstance(),
+                        offloadThreshold(), xsltTransformationPolicyConfiguration.getOffloadTimeout(), limits);
+            }
+
+            // Content type is set by the transformation, depending on the stylesheet output encoding
             return TransformableRequestStreamBuilder
                     .on(request)
-                    .contentType(MediaType.APPLICATION_XML)
-                    .transform(toXSLT(executionContext))
+                    .transform(toXSLT(executionContext, request.headers()))
                     .build();
         }
 
         return null;
     }
 
+    /**
+     * Contents are also buffered by an {@link OffloadingTransformationStream} when source limits are set, so that their
+     * violations are answered with their own status, but without being offloaded unless a threshold is set.
+     */
+    private int offloadThreshold() {
+        int threshold = xsltTransformationPolicyConfiguration.getOffloadThreshold();
+        return (threshold > 0) ? threshold : Integer.MAX_VALUE;
+    }
+
     public Function<Buffer, Buffer> toXSLT(ExecutionContext executionContext) {
+        return toXSLT(executionContext, null);
+    }
+
+    private Function<Buffer, Buffer> toXSLT(ExecutionContext executionContext, HttpHeaders headers) {
         return input -> {
-            try {
-                // Get XSL stylesheet and transform it using internal template engine
-                String stylesheet = executionContext.getTemplateEngine()
-                        .convert(xsltTransformationPolicyConfiguration.getStylesheet());
-
-                Templates template = TransformerFactory.getInstance().getTemplate(stylesheet);
-
-                SAXParserFactory spf = SAXParserFactory.newInstance();
-                spf.setNamespaceAware(true);
-                XMLReader r = spf.newSAXParser().getXMLReader();
-                EntityResolver er = new CustomResolver();
-                r.setEntityResolver(er);
-
-                InputStream xslInputStream = new ByteArrayInputStream(input.getBytes());
-                SAXSource saxSource = new SAXSource(r, new InputSource(xslInputStream));
-
-                ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                Result result = new StreamResult(baos);
-                Transformer transformer = template.newTransformer();
-
-                // Add parameters
-                if (xsltTransformationPolicyConfiguration.getParameters() != null) {
-                    xsltTransformationPolicyConfiguration.getParameters().forEach(
-                            parameter -> {
-                                if (parameter.getName() != null && ! parameter.getName().trim().isEmpty()) {
-                                    // Apply SpEL conversion
-                                    String extValue = (parameter.getValue() != null) ? executionContext.getTemplateEngine().getValue(parameter.getValue(), String.class) : null;
-                                    if (extValue != null) {
-                                        parameter.setValue(extValue.toString());
-                                    }
-                                    transformer.setParameter(parameter.getName(), parameter.getValue());
-                                }
-                            });
+            if (filter.inspectsBody()) {
+                byte[] prefix = Buffers.prefix(input, ContentFilter.SNIFF_LENGTH);
+                if (!filter.acceptsBody(prefix, prefix.length)) {
+                    return input;
                 }
+            }
 
-                transformer.transform(saxSource, result);
-                return Buffer.buffer(baos.toString());
+            try {
+                // Results are usually smaller than their source: the buffer grows as the result is written
+                Buffer output = Buffer.buffer(Math.min(input.length(), INITIAL_OUTPUT_CAPACITY));
+                OutputStream outputStream = Buffers.outputStream(output);
+                if (!transform(executionContext, headers, Buffers.inputStream(input), outputStream)) {
+                    return input;
+                }
+                outputStream.flush();
+                return output;
             } catch (Exception ex) {
+                LimitExceededException limitExceeded = LimitExceededException.find(ex);
+                if (limitExceeded != null) {
+                    throw limitExceeded;
+                }
                 throw new TransformationException("Unable to apply XSL Transformation: " + ex.getMessage(), ex);
             }
         };
     }
 
-    class CustomResolver implements EntityResolver {
-        public InputSource resolveEntity(String publicId, String systemId)
-                throws SAXException, IOException {
-                return new InputSource(); // Do not allow unknown entities, by returning blank path
+    private boolean transformIfAccepted(ExecutionContext executionContext, HttpHeaders headers, InputStream input,
+                                        OutputStream output) throws Exception {
+        if (filter.inspectsBody()) {
+            PushbackInputStream pushback = new PushbackInputStream(input, ContentFilter.SNIFF_LENGTH);
+            byte[] prefix = new byte[ContentFilter.SNIFF_LENGTH];
+            int length = Streams.readFully(pushback, prefix);
+            pushback.unread(prefix, 0, length);
+
+            if (!filter.acceptsBody(prefix, length)) {
+                Streams.copy(pushback, output);
+                return true;
+            }
+
+            input = pushback;
+        }
+
+        return transform(executionContext, headers, input, output);
+    }
+
+    /**
+     * @return <code>false</code> if no stylesheet matches: nothing has been written, and the original content must be
+     *         passed through as is, rather than the document it has been parsed into.
+     */
+    boolean transform(ExecutionContext executionContext, HttpHeaders headers, InputStream input, OutputStream output) throws Exception {
+        TransformationMetrics metrics = new TransformationMetrics();
+        CountingInputStream countingInput = new CountingInputStream(limits.limit(input));
+        CountingOutputStream countingOutput = new CountingOutputStream(output);
+        try {
+            return transform(executionContext, headers, countingInput, countingOutput, metrics);
+        } finally {
+            metrics.setBytesIn(countingInput.getCount());
+            metrics.setBytesOut(countingOutput.getCount());
+            metrics.publish(executionContext);
+
+            long threshold = xsltTransformationPolicyConfiguration.getSlowTransformationThreshold();
+            if (threshold > 0 && metrics.getTotalTime() >= TimeUnit.MILLISECONDS.toMicros(threshold)) {
+                LOGGER.warn("Slow XSL transformation: {}", metrics);
+            }
+        }
+    }
+
+    private boolean transform(ExecutionContext executionContext, HttpHeaders headers, InputStream input,
+                              OutputStream output, TransformationMetrics metrics) throws Exception {
+        // Source tree is built first only when the stylesheet is selected from the root element of the document
+        XdmNode document = stylesheets.selectsOnDocument() ? parse(input, metrics) : null;
+
+        ConfiguredStylesheet stylesheet = stylesheets.select(executionContext, document);
+        if (stylesheet == null) {
+            return false;
+        }
+
+        CompiledStylesheet[] chain = new CompiledStylesheet[pipeline.size() + 1];
+        chain[0] = stylesheet.get(executionContext, metrics);
+        for (int i = 1; i < chain.length; i++) {
+            chain[i] = pipeline.get(i - 1).get(executionContext, metrics);
+        }
+
+        CompiledStylesheet last = chain[chain.length - 1];
+        if (headers != null) {
+            headers.set(HttpHeaders.CONTENT_TYPE, last.getContentType());
+        }
+
+        Map<QName, XdmValue> values;
+        try {
+            values = parameters.resolve(executionContext);
+        } catch (RuntimeException ex) {
+            metrics.failed(TransformationErrors.Cause.EXPRESSION);
+            throw ex;
+        }
+
+        // Stages receive the result of the previous stage as events: only the first stage parses its source, and only
+        // the last one serializes its result. A JSON stage is run apart, on the result tree of the previous stages.
+        XsltTransformer[] transformers = new XsltTransformer[last.isJson() ? chain.length - 1 : chain.length];
+        for (int i = 0; i < transformers.length; i++) {
+            transformers[i] = chain[i].acquire();
+            values.forEach(transformers[i]::setParameter);
+            if (!documents.isEmpty()) {
+                transformers[i].setURIResolver(documents);
+            }
+            if (i > 0) {
+                transformers[i - 1].setDestination(transformers[i]);
+            }
+        }
+
+        XdmDestination result = last.isJson() ? new XdmDestination() : null;
+        if (transformers.length > 0) {
+            transformers[transformers.length - 1].setDestination((result != null) ? result
+                    : TransformerFactory.getInstance().getProcessor().newSerializer(output));
+        }
+
+        if (document == null) {
+            document = parse(input, metrics);
+        }
+
+        long start = System.nanoTime();
+        try {
+            if (transformers.length > 0) {
+                transformers[0].setInitialContextNode(document);
+                transformers[0].transform();
+            }
+            if (last.isJson()) {
+                last.transformToJson((transformers.length > 0) ? result.getXdmNode() : document, values,
+                        documents.isEmpty() ? null : documents, output);
+            }
+        } catch (SaxonApiException ex) {
+            metrics.failed(TransformationErrors.Cause.TRANSFORM);
+            throw ex;
+        } finally {
+            metrics.record(Phase.TRANSFORM, start);
+        }
+
+        // Transformers are only reused when the transformation completed successfully
+        for (int i = 0; i < transformers.length; i++) {
+            chain[i].release(transformers[i]);
+        }
+
+        return true;
+    }
+
+    /**
+     * Source tree is built separately so that parsing and transformation can be timed on their own.
+     */
+    private XdmNode parse(InputStream input, TransformationMetrics metrics) throws Exception {
+        long start = System.nanoTime();
+        try {
+            return build(input, treeModel(input));
+        } catch (LimitExceededException ex) {
+            metrics.failed(TransformationErrors.Cause.LIMIT);
+            throw ex;
+        } catch (TransformationInterruptedException ex) {
+            // Already counted as a timeout
+            throw ex;
+        } catch (XPathException ex) {
+            if (!TransformationInterruptedException.isCause(ex)) {
+                metrics.failed((LimitExceededException.find(ex) != null) ? TransformationErrors.Cause.LIMIT
+                        : TransformationErrors.Cause.PARSE);
+            }
+            throw ex;
+        } finally {
+            metrics.record(Phase.PARSE, start);
+        }
+    }
+
+    /**
+     * Bodies are fully buffered before being transformed, so the bytes available are the size of the body. The
+     * condensed tree shares the storage of identical text and attribute values, which saves memory on large documents,
+     * usually made of repeated values, at the cost of a slightly slower build.
+     */
+    TreeModel treeModel(InputStream input) throws IOException {
+        long threshold = xsltTransformationPolicyConfiguration.getCondensedTreeThreshold();
+        return (threshold > 0 && input.available() >= threshold) ? TreeModel.TINY_TREE_CONDENSED : TreeModel.TINY_TREE;
+    }
+
+    private XdmNode build(InputStream input, TreeModel model) throws Exception {
+        Configuration configuration = TransformerFactory.getInstance().getProcessor().getUnderlyingConfiguration();
+        ParseOptions options = new ParseOptions(configuration.getParseOptions());
+        options.setModel(model);
+        limits.apply(options);
+
+        if (xsltTransformationPolicyConfiguration.getSourceParser() == SourceParser.SAXON) {
+            options.setEntityResolver(BlankEntityResolver.INSTANCE);
+            return new XdmNode(configuration.buildDocumentTree(new StreamSource(input), options).getRootNode());
+        }
+
+        XMLReader reader = XMLReaders.acquire();
+        try {
+            return new XdmNode(configuration.buildDocumentTree(
+                    new SAXSource(reader, new InputSource(input)), options).getRootNode());
+        } finally {
+            XMLReaders.release(reader);
         }
     }
 }
@@ -0,0 +1,74 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xslt.configuration;
+
+/**
+ * A stylesheet applied only to the contents matching all of its conditions.
+ *
+ * @author GraviteeSource Team
+ */
+public class ConditionalStylesheet {
+
+    /**
+     * Expression language condition
+     */
+    private String condition;
+
+    /**
+     * SOAP action of the request, from the <code>SOAPAction</code> header (SOAP 1.1) or the <code>action</code>
+     * parameter of the content type (SOAP 1.2)
+     */
+    private String soapAction;
+
+    /**
+     * Root element of the document, as <code>local-name</code> or <code>{namespace-uri}local-name</code>
+     */
+    private String rootElement;
+
+    private String stylesheet;
+
+    public String getCondition() {
+        return condition;
+    }
+
+    public void setCondition(String condition) {
+        this.condition = condition;
+    }
+
+    public String getSoapAction() {
+        return soapAction;
+    }
+
+    public void setSoapAction(String soapAction) {
+        this.soapAction = soapAction;
+    }
+
+    public String getRootElement() {
+        return rootElement;
+    }
+
+    public void setRootElement(String rootElement) {
+        this.rootElement = rootElement;
+    }
+
+    public String getStylesheet() {
+        return stylesheet;
+    }
+
+    public void setStylesheet(String stylesheet) {
+        this.stylesheet = stylesheet;
+    }
+}
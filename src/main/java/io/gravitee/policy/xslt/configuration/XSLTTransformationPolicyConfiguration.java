@@ -28,10 +28,48 @@ public class XSLTTransformationPolicyConfiguration implements PolicyConfiguratio
 
     private String stylesheet;
 
+    private List<ConditionalStylesheet> stylesheets = new ArrayList<>();
+
+    private List<String> pipeline = new ArrayList<>();
+
     private List<XSLTParameter> parameters = new ArrayList<>();
 
+    private List<ReferenceDocument> documents = new ArrayList<>();
+
     private PolicyScope scope = PolicyScope.RESPONSE;
 
+    private boolean streaming;
+
+    private SourceParser sourceParser = SourceParser.JAXP;
+
+    private long condensedTreeThreshold;
+
+    private int offloadThreshold;
+
+    private long offloadTimeout;
+
+    private long slowTransformationThreshold;
+
+    private int warmupIterations;
+
+    private String warmupDocument;
+
+    private List<String> contentTypes = new ArrayList<>();
+
+    private List<Integer> skipStatusCodes = new ArrayList<>();
+
+    private boolean skipEmptyBody;
+
+    private boolean skipNonXmlBody;
+
+    private List<String> rootElements = new ArrayList<>();
+
+    private long maxSize;
+
+    private int maxDepth;
+
+    private long maxNodes;
+
     public String getStylesheet() {
         return stylesheet;
     }
@@ -40,6 +78,22 @@ public class XSLTTransformationPolicyConfiguration implements PolicyConfiguratio
         this.stylesheet = stylesheet;
     }
 
+    public List<ConditionalStylesheet> getStylesheets() {
+        return stylesheets;
+    }
+
+    public void setStylesheets(List<ConditionalStylesheet> stylesheets) {
+        this.stylesheets = stylesheets;
+    }
+
+    public List<String> getPipeline() {
+        return pipeline;
+    }
+
+    public void setPipeline(List<String> pipeline) {
+        this.pipeline = pipeline;
+    }
+
     public List<XSLTParameter> getParameters() {
         return parameters;
     }
@@ -48,6 +102,14 @@ public class XSLTTransformationPolicyConfiguration implements PolicyConfiguratio
         this.parameters = parameters;
     }
 
+    public List<ReferenceDocument> getDocuments() {
+        return documents;
+    }
+
+    public void setDocuments(List<ReferenceDocument> documents) {
+        this.documents = documents;
+    }
+
     public PolicyScope getScope() {
         return scope;
     }
@@ -55,4 +117,132 @@ public class XSLTTransformationPolicyConfiguration implements PolicyConfiguratio
     public void setScope(PolicyScope scope) {
         this.scope = scope;
     }
+
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    public SourceParser getSourceParser() {
+        return sourceParser;
+    }
+
+    public void setSourceParser(SourceParser sourceParser) {
+        this.sourceParser = sourceParser;
+    }
+
+    public long getCondensedTreeThreshold() {
+        return condensedTreeThreshold;
+    }
+
+    public void setCondensedTreeThreshold(long condensedTreeThreshold) {
+        this.condensedTreeThreshold = condensedTreeThreshold;
+    }
+
+    public int getOffloadThreshold() {
+        return offloadThreshold;
+    }
+
+    public void setOffloadThreshold(int offloadThreshold) {
+        this.offloadThreshold = offloadThreshold;
+    }
+
+    public long getOffloadTimeout() {
+        return offloadTimeout;
+    }
+
+    public void setOffloadTimeout(long offloadTimeout) {
+        this.offloadTimeout = offloadTimeout;
+    }
+
+    public long getSlowTransformationThreshold() {
+        return slowTransformationThreshold;
+    }
+
+    public void setSlowTransformationThreshold(long slowTransformationThreshold) {
+        this.slowTransformationThreshold = slowTransformationThreshold;
+    }
+
+    public int getWarmupIterations() {
+        return warmupIterations;
+    }
+
+    public void setWarmupIterations(int warmupIterations) {
+        this.warmupIterations = warmupIterations;
+    }
+
+    public String getWarmupDocument() {
+        return warmupDocument;
+    }
+
+    public void setWarmupDocument(String warmupDocument) {
+        this.warmupDocument = warmupDocument;
+    }
+
+    public List<String> getContentTypes() {
+        return contentTypes;
+    }
+
+    public void setContentTypes(List<String> contentTypes) {
+        this.contentTypes = contentTypes;
+    }
+
+    public List<Integer> getSkipStatusCodes() {
+        return skipStatusCodes;
+    }
+
+    public void setSkipStatusCodes(List<Integer> skipStatusCodes) {
+        this.skipStatusCodes = skipStatusCodes;
+    }
+
+    public boolean isSkipEmptyBody() {
+        return skipEmptyBody;
+    }
+
+    public void setSkipEmptyBody(boolean skipEmptyBody) {
+        this.skipEmptyBody = skipEmptyBody;
+    }
+
+    public boolean isSkipNonXmlBody() {
+        return skipNonXmlBody;
+    }
+
+    public void setSkipNonXmlBody(boolean skipNonXmlBody) {
+        this.skipNonXmlBody = skipNonXmlBody;
+    }
+
+    public List<String> getRootElements() {
+        return rootElements;
+    }
+
+    public void setRootElements(List<String> rootElements) {
+        this.rootElements = rootElements;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public void setMaxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
+    }
+
+    public long getMaxNodes() {
+        return maxNodes;
+    }
+
+    public void setMaxNodes(long maxNodes) {
+        this.maxNodes = maxNodes;
+    }
 }
@@ -0,0 +1,154 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xslt.filter;
+
+import io.gravitee.common.http.HttpHeaders;
+import io.gravitee.common.http.HttpStatusCode;
+import io.gravitee.policy.xslt.configuration.XSLTTransformationPolicyConfiguration;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Checks run before a transformation, so that contents which must not be transformed are passed through untouched,
+ * without being parsed.
+ *
+ * Headers and status are checked before the content is received, while the body is checked from its first
+ * {@link #SNIFF_LENGTH} bytes.
+ *
+ * @author GraviteeSource Team
+ */
+public class ContentFilter {
+
+    /**
+     * Number of bytes inspected to find the root element of the body
+     */
+    public static final int SNIFF_LENGTH = 4096;
+
+    private final List<String> contentTypes;
+
+    private final Set<Integer> skipStatusCodes;
+
+    private final boolean skipEmptyBody;
+
+    private final boolean skipNonXmlBody;
+
+    private final Set<String> rootElements;
+
+    private ContentFilter(XSLTTransformationPolicyConfiguration configuration) {
+        this.contentTypes = new ArrayList<>();
+        if (configuration.getContentTypes() != null) {
+            for (String contentType : configuration.getContentTypes()) {
+                contentTypes.add(contentType.trim().toLowerCase());
+            }
+        }
+
+        this.skipStatusCodes = (configuration.getSkipStatusCodes() != null) ?
+                new HashSet<>(configuration.getSkipStatusCodes()) : Collections.emptySet();
+        this.skipEmptyBody = configuration.isSkipEmptyBody();
+        this.skipNonXmlBody = configuration.isSkipNonXmlBody();
+        this.rootElements = (configuration.getRootElements() != null) ?
+                new HashSet<>(configuration.getRootElements()) : Collections.emptySet();
+    }
+
+    public static ContentFilter of(XSLTTransformationPolicyConfiguration configuration) {
+        return new ContentFilter(configuration);
+    }
+
+    /**
+     * Responses without content are never transformed.
+     */
+    public boolean acceptsStatus(int status) {
+        return status != HttpStatusCode.NO_CONTENT_204 && status != HttpStatusCode.NOT_MODIFIED_304
+                && !skipStatusCodes.contains(status);
+    }
+
+    /**
+     * A content without <code>Content-Type</code> is accepted, and left to the body checks.
+     */
+    public boolean acceptsHeaders(HttpHeaders headers) {
+        if (contentTypes.isEmpty()) {
+            return true;
+        }
+
+        String contentType = headers.getFirst(HttpHeaders.CONTENT_TYPE);
+        if (contentType == null) {
+            return true;
+        }
+
+        int parameters = contentType.indexOf(';');
+        String mediaType = ((parameters == -1) ? contentType : contentType.substring(0, parameters)).trim().toLowerCase();
+        for (String accepted : contentTypes) {
+            if (matches(accepted, mediaType)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return <code>true</code> if the body has to be inspected by {@link #acceptsBody(byte[], int)}.
+     */
+    public boolean inspectsBody() {
+        return skipEmptyBody || skipNonXmlBody || !rootElements.isEmpty();
+    }
+
+    /**
+     * @param prefix the first bytes of the body.
+     * @param length the number of bytes available in <code>prefix</code>, at most {@link #SNIFF_LENGTH}.
+     */
+    public boolean acceptsBody(byte[] prefix, int length) {
+        if (length == 0) {
+            return !skipEmptyBody;
+        }
+
+        if (!skipNonXmlBody && rootElements.isEmpty()) {
+            return true;
+        }
+
+        String root = XmlSniffer.rootElement(prefix, length);
+        if (root == null) {
+            // Undetermined, let the parser decide
+            return true;
+        }
+
+        if (root == XmlSniffer.NOT_XML) {
+            return !skipNonXmlBody && rootElements.isEmpty();
+        }
+
+        return rootElements.isEmpty() || rootElements.contains(root)
+                || rootElements.contains(root.substring(root.indexOf('}') + 1));
+    }
+
+    /**
+     * Media types may use a <code>*</code> wildcard, such as in <code>application/*+xml</code>.
+     */
+    private static boolean matches(String pattern, String mediaType) {
+        int wildcard = pattern.indexOf('*');
+        if (wildcard == -1) {
+            return pattern.equals(mediaType);
+        }
+
+        String prefix = pattern.substring(0, wildcard);
+        String suffix = pattern.substring(wildcard + 1);
+        return mediaType.length() >= prefix.length() + suffix.length()
+                && mediaType.startsWith(prefix) && mediaType.endsWith(suffix);
+    }
+}
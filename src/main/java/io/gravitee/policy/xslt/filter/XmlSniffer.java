@@ -0,0 +1,239 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xslt.filter;
+
+import javax.xml.XMLConstants;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Finds the root element of a document from its first bytes, without parsing it. The prolog (XML declaration,
+ * comments, processing instructions and document type declaration) is skipped, and the namespace of the root element
+ * is resolved from the declarations of its start tag.
+ *
+ * Only ASCII compatible encodings are inspected: a document encoded in UTF-16 is left undetermined.
+ *
+ * @author GraviteeSource Team
+ */
+final class XmlSniffer {
+
+    /**
+     * Returned when the content can not be an XML document
+     */
+    static final String NOT_XML = "";
+
+    private final byte[] data;
+
+    private final int length;
+
+    private int position;
+
+    private XmlSniffer(byte[] data, int length) {
+        this.data = data;
+        this.length = length;
+    }
+
+    /**
+     * @return the name of the root element in Clark notation (<code>{uri}local</code>, or <code>local</code> when it
+     * has no namespace), {@link #NOT_XML}, or <code>null</code> if it can not be determined from the given bytes.
+     */
+    static String rootElement(byte[] data, int length) {
+        return new XmlSniffer(data, length).sniff();
+    }
+
+    private String sniff() {
+        // UTF-8 byte order mark
+        if (startsWith("\u00EF\u00BB\u00BF")) {
+            position = 3;
+        } else if (length >= 2 && (data[0] == (byte) 0xFE || data[0] == (byte) 0xFF || data[0] == 0)) {
+            // UTF-16 / UTF-32
+            return null;
+        }
+
+        while (true) {
+            skipWhitespaces();
+            if (position >= length) {
+                return null;
+            }
+
+            if (data[position] != '<') {
+                return NOT_XML;
+            }
+
+            if (startsWith("<?")) {
+                if (!skipPast("?>")) {
+                    return null;
+                }
+            } else if (startsWith("<!--")) {
+                if (!skipPast("-->")) {
+                    return null;
+                }
+            } else if (startsWith("<!DOCTYPE")) {
+                if (!skipDoctype()) {
+                    return null;
+                }
+            } else if (startsWith("<!")) {
+                return NOT_XML;
+            } else {
+                position++;
+                return startTag();
+            }
+        }
+    }
+
+    private String startTag() {
+        String name = name();
+        if (name == null) {
+            return null;
+        }
+        if (name.isEmpty()) {
+            return NOT_XML;
+        }
+
+        int colon = name.indexOf(':');
+        String prefix = (colon == -1) ? null : name.substring(0, colon);
+        String localName = name.substring(colon + 1);
+        String namespace = null;
+
+        // Attributes, looking for the declaration of the namespace of the element
+        while (true) {
+            skipWhitespaces();
+            if (position >= length) {
+                return null;
+            }
+
+            byte current = data[position];
+            if (current == '>' || current == '/') {
+                break;
+            }
+
+            String attribute = name();
+            if (attribute == null) {
+                return null;
+            }
+            if (attribute.isEmpty()) {
+                return NOT_XML;
+            }
+
+            skipWhitespaces();
+            if (position >= length) {
+                return null;
+            }
+            if (data[position++] != '=') {
+                return NOT_XML;
+            }
+
+            skipWhitespaces();
+            if (position >= length) {
+                return null;
+            }
+
+            byte quote = data[position++];
+            if (quote != '"' && quote != '\'') {
+                return NOT_XML;
+            }
+
+            int start = position;
+            while (position < length && data[position] != quote) {
+                position++;
+            }
+            if (position >= length) {
+                return null;
+            }
+
+            String value = new String(data, start, position - start, StandardCharsets.UTF_8);
+            position++;
+
+            if ((prefix == null && attribute.equals(XMLConstants.XMLNS_ATTRIBUTE))
+                    || (prefix != null && attribute.equals(XMLConstants.XMLNS_ATTRIBUTE + ':' + prefix))) {
+                namespace = value;
+            }
+        }
+
+        return (namespace == null || namespace.isEmpty()) ? localName : '{' + namespace + '}' + localName;
+    }
+
+    /**
+     * @return the name at the current position, an empty string if there is none, or <code>null</code> if the data
+     * ends before the end of the name.
+     */
+    private String name() {
+        int start = position;
+        while (position < length) {
+            byte current = data[position];
+            if (current == '>' || current == '/' || current == '=' || isWhitespace(current)) {
+                return new String(data, start, position - start, StandardCharsets.UTF_8);
+            }
+            if (current == '<' || current == '"' || current == '\'') {
+                return "";
+            }
+            position++;
+        }
+
+        return null;
+    }
+
+    private boolean skipDoctype() {
+        int depth = 0;
+        while (position < length) {
+            byte current = data[position++];
+            if (current == '[') {
+                depth++;
+            } else if (current == ']') {
+                depth--;
+            } else if (current == '>' && depth == 0) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private boolean skipPast(String end) {
+        while (position < length) {
+            if (startsWith(end)) {
+                position += end.length();
+                return true;
+            }
+            position++;
+        }
+
+        return false;
+    }
+
+    private void skipWhitespaces() {
+        while (position < length && isWhitespace(data[position])) {
+            position++;
+        }
+    }
+
+    private boolean startsWith(String value) {
+        if (position + value.length() > length) {
+            return false;
+        }
+
+        for (int i = 0; i < value.length(); i++) {
+            if (data[position + i] != (byte) value.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+}
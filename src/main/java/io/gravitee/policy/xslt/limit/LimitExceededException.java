@@ -0,0 +1,58 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xslt.limit;
+
+import io.gravitee.gateway.api.stream.exception.TransformationException;
+
+/**
+ * Thrown while the body is read or parsed, as soon as it exceeds one of the configured {@link SourceLimits}.
+ *
+ * @author GraviteeSource Team
+ */
+public class LimitExceededException extends TransformationException {
+
+    private final int status;
+
+    public LimitExceededException(String message, int status) {
+        super(message);
+        this.status = status;
+    }
+
+    /**
+     * @return the HTTP status of the response sent in place of the transformed content.
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * Parsers may wrap the exceptions raised while reading their input.
+     *
+     * @return the first {@link LimitExceededException} in the causes of the throwable, or <code>null</code> if none.
+     */
+    public static LimitExceededException find(Throwable throwable) {
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            if (cause instanceof LimitExceededException) {
+                return (LimitExceededException) cause;
+            }
+            if (cause.getCause() == cause) {
+                break;
+            }
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xslt.limit;
+
+import io.gravitee.policy.xslt.worker.TransformationInterruptedException;
+import net.sf.saxon.event.ProxyReceiver;
+import net.sf.saxon.event.Receiver;
+import net.sf.saxon.expr.parser.Location;
+import net.sf.saxon.om.NodeName;
+import net.sf.saxon.trans.XPathException;
+import net.sf.saxon.type.SchemaType;
+import net.sf.saxon.type.SimpleType;
+
+/**
+ * Saxon filter placed between the parser and the tree builder, counting the element depth and the number of nodes of
+ * the document being built, so that an oversized document is rejected before its whole tree is allocated. Building
+ * is also aborted as soon as the current thread is interrupted, even when the whole body has already been read.
+ *
+ * @author GraviteeSource Team
+ */
+class LimitingFilter extends ProxyReceiver {
+
+    private final SourceLimits limits;
+
+    private int depth;
+
+    private long nodes;
+
+    LimitingFilter(Receiver next, SourceLimits limits) {
+        super(next);
+        this.limits = limits;
+    }
+
+    @Override
+    public void startElement(NodeName elemName, SchemaType typeCode, Location location, int properties) throws XPathException {
+        if (++depth > limits.getMaxDepth() && limits.getMaxDepth() > 0) {
+            throw limits.depthExceeded();
+        }
+        TransformationInterruptedException.check();
+        node();
+        super.startElement(elemName, typeCode, location, properties);
+    }
+
+    @Override
+    public void endElement() throws XPathException {
+        depth--;
+        super.endElement();
+    }
+
+    @Override
+    public void attribute(NodeName nameCode, SimpleType typeCode, CharSequence value, Location locationId, int properties) throws XPathException {
+        node();
+        super.attribute(nameCode, typeCode, value, locationId, properties);
+    }
+
+    @Override
+    public void characters(CharSequence chars, Location locationId, int properties) throws XPathException {
+        node();
+        super.characters(chars, locationId, properties);
+    }
+
+    @Override
+    public void processingInstruction(String target, CharSequence data, Location locationId, int properties) throws XPathException {
+        node();
+        super.processingInstruction(target, data, locationId, properties);
+    }
+
+    @Override
+    public void comment(CharSequence chars, Location locationId, int properties) throws XPathException {
+        node();
+        super.comment(chars, locationId, properties);
+    }
+
+    private void node() {
+        if (++nodes > limits.getMaxNodes() && limits.getMaxNodes() > 0) {
+            throw limits.nodesExceeded();
+        }
+    }
+}
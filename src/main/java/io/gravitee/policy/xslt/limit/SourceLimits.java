@@ -0,0 +1,138 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xslt.limit;
+
+import io.gravitee.common.http.HttpHeaders;
+import io.gravitee.common.http.HttpStatusCode;
+import io.gravitee.policy.xslt.configuration.PolicyScope;
+import io.gravitee.policy.xslt.configuration.XSLTTransformationPolicyConfiguration;
+import net.sf.saxon.lib.ParseOptions;
+
+import java.io.InputStream;
+
+/**
+ * Bounds on the body to transform, enforced while it is read and parsed. A limit of <code>0</code> disables it.
+ *
+ * A request body exceeding its size is rejected with a <code>413</code>, and with a <code>400</code> when it exceeds
+ * its depth or node count. A response body exceeding any of the limits is replaced by a <code>502</code>: the client
+ * is not responsible for the content sent by the backend.
+ *
+ * @author GraviteeSource Team
+ */
+public class SourceLimits {
+
+    private final long maxSize;
+
+    private final int maxDepth;
+
+    private final long maxNodes;
+
+    private final int sizeStatus;
+
+    private final int structureStatus;
+
+    SourceLimits(long maxSize, int maxDepth, long maxNodes, int sizeStatus, int structureStatus) {
+        this.maxSize = maxSize;
+        this.maxDepth = maxDepth;
+        this.maxNodes = maxNodes;
+        this.sizeStatus = sizeStatus;
+        this.structureStatus = structureStatus;
+    }
+
+    public static SourceLimits of(XSLTTransformationPolicyConfiguration configuration) {
+        if (configuration.getScope() == PolicyScope.REQUEST) {
+            return new SourceLimits(configuration.getMaxSize(), configuration.getMaxDepth(),
+                    configuration.getMaxNodes(), HttpStatusCode.REQUEST_ENTITY_TOO_LARGE_413,
+                    HttpStatusCode.BAD_REQUEST_400);
+        }
+
+        return new SourceLimits(configuration.getMaxSize(), configuration.getMaxDepth(), configuration.getMaxNodes(),
+                HttpStatusCode.BAD_GATEWAY_502, HttpStatusCode.BAD_GATEWAY_502);
+    }
+
+    public boolean isEnabled() {
+        return maxSize > 0 || maxDepth > 0 || maxNodes > 0;
+    }
+
+    /**
+     * @return <code>true</code> if a body of the given size, in bytes, exceeds the maximum size.
+     */
+    public boolean exceedsSize(long size) {
+        return maxSize > 0 && size > maxSize;
+    }
+
+    /**
+     * @return <code>true</code> if the content length declared by the headers exceeds the maximum size, so that the
+     * body can be rejected before being read.
+     */
+    public boolean exceedsSize(HttpHeaders headers) {
+        if (maxSize <= 0 || headers == null) {
+            return false;
+        }
+
+        String contentLength = headers.getFirst(HttpHeaders.CONTENT_LENGTH);
+        if (contentLength == null) {
+            return false;
+        }
+
+        try {
+            return exceedsSize(Long.parseLong(contentLength.trim()));
+        } catch (NumberFormatException nfe) {
+            // Left to the checks made while the body is received
+            return false;
+        }
+    }
+
+    /**
+     * @return the input, failing once the maximum size has been read.
+     */
+    public InputStream limit(InputStream input) {
+        return (maxSize > 0) ? new LimitedInputStream(input, this) : input;
+    }
+
+    /**
+     * Adds the depth and node count checks to the tree built with the parse options.
+     */
+    public void apply(ParseOptions options) {
+        if (maxDepth > 0 || maxNodes > 0) {
+            options.addFilter(next -> new LimitingFilter(next, this));
+        }
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public long getMaxNodes() {
+        return maxNodes;
+    }
+
+    public LimitExceededException sizeExceeded() {
+        return new LimitExceededException("Body exceeds the maximum size of " + maxSize + " bytes", sizeStatus);
+    }
+
+    LimitExceededException depthExceeded() {
+        return new LimitExceededException("Body exceeds the maximum depth of " + maxDepth + " elements", structureStatus);
+    }
+
+    LimitExceededException nodesExceeded() {
+        return new LimitExceededException("Body exceeds the maximum number of " + maxNodes + " nodes", structureStatus);
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xslt.metrics;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the failed transformations, by cause, for all the policy instances.
+ *
+ * @author GraviteeSource Team
+ */
+public final class TransformationErrors {
+
+    public enum Cause {
+        /**
+         * Expression language of the stylesheet or of a parameter can not be evaluated
+         */
+        EXPRESSION,
+        /**
+         * Stylesheet can not be compiled
+         */
+        COMPILE,
+        /**
+         * Body is not a well-formed XML document
+         */
+        PARSE,
+        /**
+         * Body exceeds the configured size, depth or node count
+         */
+        LIMIT,
+        /**
+         * Stylesheet raised an error while being applied
+         */
+        TRANSFORM,
+        /**
+         * Offloaded transformation did not complete in time
+         */
+        TIMEOUT,
+        /**
+         * Worker pool queue was full
+         */
+        REJECTED
+    }
+
+    private static final Map<Cause, LongAdder> counters = new EnumMap<>(Cause.class);
+
+    static {
+        for (Cause cause : Cause.values()) {
+            counters.put(cause, new LongAdder());
+        }
+    }
+
+    private TransformationErrors() {
+    }
+
+    public static void increment(Cause cause) {
+        counters.get(cause).increment();
+    }
+
+    public static long get(Cause cause) {
+        return counters.get(cause).sum();
+    }
+}
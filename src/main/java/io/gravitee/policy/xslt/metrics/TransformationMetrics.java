@@ -0,0 +1,165 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xslt.metrics;
+
+import io.gravitee.gateway.api.ExecutionContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timings and sizes of a single transformation, published as {@link ExecutionContext} attributes so that they can be
+ * used by the following policies or by the request logs. Timings are expressed in microseconds.
+ *
+ * The compiled stylesheet cache statistics and the error counters, shared by all the APIs, say nothing about a single
+ * transformation: they are only exposed through {@link TransformationStats}.
+ *
+ * @author GraviteeSource Team
+ */
+public final class TransformationMetrics {
+
+    public static final String ATTR_PREFIX = ExecutionContext.ATTR_PREFIX + "xslt.";
+
+    public static final String ATTR_STYLESHEET = ATTR_PREFIX + "stylesheet";
+    public static final String ATTR_BYTES_IN = ATTR_PREFIX + "bytes.in";
+    public static final String ATTR_BYTES_OUT = ATTR_PREFIX + "bytes.out";
+    public static final String ATTR_ERROR = ATTR_PREFIX + "error";
+
+    static {
+        TransformationStats.register();
+    }
+
+    public enum Phase {
+        /**
+         * Expression language evaluation of the stylesheet
+         */
+        CONVERT,
+        /**
+         * Hash of the stylesheet, used as the compiled stylesheet cache key
+         */
+        HASH,
+        /**
+         * Compiled stylesheet lookup, including compilation on a cache miss
+         */
+        COMPILE,
+        /**
+         * Parsing of the body into a source tree
+         */
+        PARSE,
+        /**
+         * Stylesheet execution and result serialization
+         */
+        TRANSFORM;
+
+        public String attribute() {
+            return ATTR_PREFIX + "time." + name().toLowerCase();
+        }
+    }
+
+    private final long[] times = new long[Phase.values().length];
+
+    private String stylesheet;
+
+    private long bytesIn;
+
+    private long bytesOut;
+
+    private TransformationErrors.Cause error;
+
+    /**
+     * Records the time elapsed since <code>start</code> for the given phase, and returns the current time so that it
+     * can be used as the start of the next phase.
+     */
+    public long record(Phase phase, long start) {
+        long now = System.nanoTime();
+        times[phase.ordinal()] += now - start;
+        return now;
+    }
+
+    public long getTime(Phase phase) {
+        return TimeUnit.NANOSECONDS.toMicros(times[phase.ordinal()]);
+    }
+
+    /**
+     * @return the total time of the transformation, in microseconds.
+     */
+    public long getTotalTime() {
+        long total = 0;
+        for (long time : times) {
+            total += time;
+        }
+        return TimeUnit.NANOSECONDS.toMicros(total);
+    }
+
+    public String getStylesheet() {
+        return stylesheet;
+    }
+
+    public void setStylesheet(String stylesheet) {
+        this.stylesheet = stylesheet;
+    }
+
+    public long getBytesIn() {
+        return bytesIn;
+    }
+
+    public void setBytesIn(long bytesIn) {
+        this.bytesIn = bytesIn;
+    }
+
+    public long getBytesOut() {
+        return bytesOut;
+    }
+
+    public void setBytesOut(long bytesOut) {
+        this.bytesOut = bytesOut;
+    }
+
+    public TransformationErrors.Cause getError() {
+        return error;
+    }
+
+    public void failed(TransformationErrors.Cause error) {
+        this.error = error;
+        TransformationErrors.increment(error);
+    }
+
+    public void publish(ExecutionContext executionContext) {
+        for (Phase phase : Phase.values()) {
+            executionContext.setAttribute(phase.attribute(), getTime(phase));
+        }
+
+        executionContext.setAttribute(ATTR_STYLESHEET, stylesheet);
+        executionContext.setAttribute(ATTR_BYTES_IN, bytesIn);
+        executionContext.setAttribute(ATTR_BYTES_OUT, bytesOut);
+
+        if (error != null) {
+            executionContext.setAttribute(ATTR_ERROR, error.name());
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("stylesheet=").append(stylesheet);
+        for (Phase phase : Phase.values()) {
+            builder.append(", ").append(phase.name().toLowerCase()).append('=').append(getTime(phase)).append("us");
+        }
+
+        return builder
+                .append(", in=").append(bytesIn).append('B')
+                .append(", out=").append(bytesOut).append('B')
+                .toString();
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xslt.metrics;
+
+import io.gravitee.policy.xslt.transformer.TemplateCacheStats;
+import io.gravitee.policy.xslt.transformer.TransformerFactory;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compiled stylesheet cache statistics and error counters, registered once in the platform MBean server under
+ * {@link #OBJECT_NAME}.
+ *
+ * @author GraviteeSource Team
+ */
+public final class TransformationStats implements TransformationStatsMXBean {
+
+    public static final String OBJECT_NAME = "io.gravitee.policy.xslt:type=TransformationStats";
+
+    private TransformationStats() {
+    }
+
+    /**
+     * Registers the counters, unless they already are, for instance by another class loader of the policy.
+     */
+    static void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(new TransformationStats(), name);
+            }
+        } catch (JMException | RuntimeException ex) {
+            LoggerFactory.getLogger(TransformationStats.class)
+                    .warn("Unable to register XSL transformation statistics: {}", ex.getMessage());
+        }
+    }
+
+    @Override
+    public long getCacheHits() {
+        return cache().getHits();
+    }
+
+    @Override
+    public long getCacheMisses() {
+        return cache().getMisses();
+    }
+
+    @Override
+    public long getCacheEvictions() {
+        return cache().getEvictions();
+    }
+
+    @Override
+    public long getCacheCompilations() {
+        return cache().getCompilations();
+    }
+
+    @Override
+    public long getCacheCompileTime() {
+        return TimeUnit.NANOSECONDS.toMicros(cache().getCompileTime());
+    }
+
+    @Override
+    public long getCacheWarmups() {
+        return cache().getWarmups();
+    }
+
+    @Override
+    public long getCacheWarmupTime() {
+        return TimeUnit.NANOSECONDS.toMicros(cache().getWarmupTime());
+    }
+
+    @Override
+    public long getExpressionErrors() {
+        return TransformationErrors.get(TransformationErrors.Cause.EXPRESSION);
+    }
+
+    @Override
+    public long getCompileErrors() {
+        return TransformationErrors.get(TransformationErrors.Cause.COMPILE);
+    }
+
+    @Override
+    public long getParseErrors() {
+        return TransformationErrors.get(TransformationErrors.Cause.PARSE);
+    }
+
+    @Override
+    public long getLimitErrors() {
+        return TransformationErrors.get(TransformationErrors.Cause.LIMIT);
+    }
+
+    @Override
+    public long getTransformErrors() {
+        return TransformationErrors.get(TransformationErrors.Cause.TRANSFORM);
+    }
+
+    @Override
+    public long getTimeoutErrors() {
+        return TransformationErrors.get(TransformationErrors.Cause.TIMEOUT);
+    }
+
+    @Override
+    public long getRejectedErrors() {
+        return TransformationErrors.get(TransformationErrors.Cause.REJECTED);
+    }
+
+    private static TemplateCacheStats cache() {
+        return TransformerFactory.getInstance().getStats();
+    }
+}
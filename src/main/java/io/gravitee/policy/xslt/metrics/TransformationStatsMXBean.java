@@ -0,0 +1,53 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xslt.metrics;
+
+/**
+ * Counters shared by all the APIs, exposed once through JMX instead of being published with each transformation.
+ * Timings are expressed in microseconds.
+ *
+ * @author GraviteeSource Team
+ */
+public interface TransformationStatsMXBean {
+
+    long getCacheHits();
+
+    long getCacheMisses();
+
+    long getCacheEvictions();
+
+    long getCacheCompilations();
+
+    long getCacheCompileTime();
+
+    long getCacheWarmups();
+
+    long getCacheWarmupTime();
+
+    long getExpressionErrors();
+
+    long getCompileErrors();
+
+    long getParseErrors();
+
+    long getLimitErrors();
+
+    long getTransformErrors();
+
+    long getTimeoutErrors();
+
+    long getRejectedErrors();
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xslt.stream;
+
+import io.gravitee.gateway.api.buffer.Buffer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Reads a list of body chunks in sequence, without consolidating them into a single buffer first. Each chunk is
+ * released as soon as it has been consumed so that the memory can be reclaimed while the document is being parsed,
+ * unless the chunks must be kept, to be passed through as is once read.
+ *
+ * @author GraviteeSource Team
+ */
+public class BufferChunksInputStream extends InputStream {
+
+    private final List<Buffer> chunks;
+
+    private final boolean release;
+
+    private int index;
+
+    private InputStream current;
+
+    public BufferChunksInputStream(List<Buffer> chunks) {
+        this(chunks, true);
+    }
+
+    /**
+     * @param release <code>false</code> to keep the chunks in the list once consumed.
+     */
+    public BufferChunksInputStream(List<Buffer> chunks, boolean release) {
+        this.chunks = chunks;
+        this.release = release;
+    }
+
+    @Override
+    public int read() throws IOException {
+        while (ensureCurrent()) {
+            int b = current.read();
+            if (b != -1) {
+                return b;
+            }
+            current = null;
+        }
+
+        return -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        while (ensureCurrent()) {
+            int count = current.read(b, off, len);
+            if (count > 0) {
+                return count;
+            }
+            current = null;
+        }
+
+        return -1;
+    }
+
+    /**
+     * @return the number of bytes left in all the chunks, since they are all in memory.
+     */
+    @Override
+    public int available() throws IOException {
+        long available = (current == null) ? 0 : current.available();
+        for (int i = index; i < chunks.size(); i++) {
+            available += chunks.get(i).length();
+        }
+        return (int) Math.min(available, Integer.MAX_VALUE);
+    }
+
+    private boolean ensureCurrent() {
+        if (current != null) {
+            return true;
+        }
+
+        if (index == chunks.size()) {
+            return false;
+        }
+
+        current = Buffers.inputStream(release ? chunks.set(index++, null) : chunks.get(index++));
+        return true;
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xslt.stream;
+
+import io.gravitee.gateway.api.buffer.Buffer;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Stream adapters over gateway {@link Buffer}s. When the buffer is backed by a Netty {@link ByteBuf}, the underlying
+ * memory is read from and written to directly, without intermediate <code>byte[]</code> copies.
+ *
+ * @author GraviteeSource Team
+ */
+public final class Buffers {
+
+    private Buffers() {
+    }
+
+    public static InputStream inputStream(Buffer buffer) {
+        Object nativeBuffer = buffer.getNativeBuffer();
+        if (nativeBuffer instanceof ByteBuf) {
+            // Slice shares the content but not the indexes of the original buffer
+            ByteBuf byteBuf = (ByteBuf) nativeBuffer;
+            return new ByteBufInputStream(byteBuf.slice(0, byteBuf.writerIndex()));
+        }
+
+        return new ByteArrayInputStream(buffer.getBytes());
+    }
+
+    /**
+     * @return a copy of at most <code>length</code> bytes from the beginning of the buffer.
+     */
+    public static byte[] prefix(Buffer buffer, int length) {
+        Object nativeBuffer = buffer.getNativeBuffer();
+        if (nativeBuffer instanceof ByteBuf) {
+            ByteBuf byteBuf = (ByteBuf) nativeBuffer;
+            byte[] prefix = new byte[Math.min(length, byteBuf.writerIndex())];
+            byteBuf.getBytes(0, prefix);
+            return prefix;
+        }
+
+        byte[] bytes = buffer.getBytes();
+        return (bytes.length <= length) ? bytes : Arrays.copyOf(bytes, length);
+    }
+
+    /**
+     * Writes to a buffer which is not backed by a Netty {@link ByteBuf} are gathered, and only appended to it once
+     * enough of them have been written, or when the stream is flushed or closed.
+     */
+    public static OutputStream outputStream(Buffer buffer) {
+        Object nativeBuffer = buffer.getNativeBuffer();
+        if (nativeBuffer instanceof ByteBuf) {
+            return new ByteBufOutputStream((ByteBuf) nativeBuffer);
+        }
+
+        return new AppendingOutputStream(buffer);
+    }
+
+    private static class AppendingOutputStream extends OutputStream {
+
+        private static final int BUFFER_SIZE = 8192;
+
+        private final Buffer buffer;
+
+        private final byte[] pending = new byte[BUFFER_SIZE];
+
+        private int count;
+
+        AppendingOutputStream(Buffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void write(int b) {
+            if (count == pending.length) {
+                flush();
+            }
+            pending[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            if (len > pending.length - count) {
+                flush();
+            }
+            if (len >= pending.length) {
+                buffer.appendBuffer(Buffer.buffer(Arrays.copyOfRange(b, off, off + len)));
+                return;
+            }
+
+            System.arraycopy(b, off, pending, count, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() {
+            if (count > 0) {
+                buffer.appendBuffer(Buffer.buffer(Arrays.copyOf(pending, count)));
+                count = 0;
+            }
+        }
+
+        @Override
+        public void close() {
+            flush();
+        }
+    }
+}
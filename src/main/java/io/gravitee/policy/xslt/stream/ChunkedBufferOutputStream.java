@@ -0,0 +1,112 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xslt.stream;
+
+import io.gravitee.gateway.api.buffer.Buffer;
+import io.gravitee.gateway.api.handler.Handler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Emits the serialized transformation result downstream as fixed-size chunks, as soon as they are produced.
+ *
+ * @author GraviteeSource Team
+ */
+public class ChunkedBufferOutputStream extends OutputStream {
+
+    static final int DEFAULT_CHUNK_SIZE = 8192;
+
+    private final Handler<Buffer> chunkHandler;
+
+    private final int chunkSize;
+
+    private Buffer chunk;
+
+    private OutputStream chunkOutput;
+
+    private int count;
+
+    private boolean emitted;
+
+    public ChunkedBufferOutputStream(Handler<Buffer> chunkHandler) {
+        this(chunkHandler, DEFAULT_CHUNK_SIZE);
+    }
+
+    public ChunkedBufferOutputStream(Handler<Buffer> chunkHandler, int chunkSize) {
+        this.chunkHandler = chunkHandler;
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureChunk();
+        chunkOutput.write(b);
+        count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            ensureChunk();
+
+            int length = Math.min(len, chunkSize - count);
+            chunkOutput.write(b, off, length);
+            count += length;
+            off += length;
+            len -= length;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (count > 0) {
+            emit();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+
+    /**
+     * @return <code>true</code> if at least one chunk has already been sent downstream.
+     */
+    public boolean hasEmitted() {
+        return emitted;
+    }
+
+    private void ensureChunk() throws IOException {
+        if (count == chunkSize) {
+            emit();
+        }
+
+        if (chunk == null) {
+            chunk = Buffer.buffer(chunkSize);
+            chunkOutput = Buffers.outputStream(chunk);
+        }
+    }
+
+    private void emit() throws IOException {
+        chunkOutput.flush();
+        emitted = true;
+        chunkHandler.handle(chunk);
+        chunk = null;
+        chunkOutput = null;
+        count = 0;
+    }
+}
@@ -0,0 +1,152 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xslt.stream;
+
+import io.gravitee.common.http.HttpHeaders;
+import io.gravitee.gateway.api.buffer.Buffer;
+import io.gravitee.gateway.api.stream.BufferedReadWriteStream;
+import io.gravitee.gateway.api.stream.SimpleReadWriteStream;
+import io.gravitee.policy.api.PolicyChain;
+import io.gravitee.policy.api.PolicyResult;
+import io.gravitee.policy.xslt.limit.LimitExceededException;
+import io.gravitee.policy.xslt.limit.SourceLimits;
+import io.gravitee.policy.xslt.metrics.TransformationErrors;
+import io.gravitee.policy.xslt.worker.RejectedTransformationException;
+import io.gravitee.policy.xslt.worker.TransformationExecutor;
+
+import java.util.function.Function;
+
+/**
+ * A {@link io.gravitee.gateway.api.stream.ReadWriteStream} which buffers the whole content, then runs the
+ * transformation on a {@link TransformationExecutor} worker thread when the content is larger than the configured
+ * threshold. Smaller contents are transformed inline.
+ *
+ * The maximum size of the source limits is enforced while the content is received: a content declaring, or reaching,
+ * a larger size fails the stream at once, and the rest of it is discarded instead of being buffered.
+ *
+ * @author GraviteeSource Team
+ */
+public class OffloadingTransformationStream extends BufferedReadWriteStream {
+
+    private final HttpHeaders headers;
+
+    private final PolicyChain policyChain;
+
+    private final Function<Buffer, Buffer> transformation;
+
+    private final TransformationExecutor executor;
+
+    private final int threshold;
+
+    private final long timeout;
+
+    private final SourceLimits limits;
+
+    private Buffer buffer;
+
+    private long size;
+
+    private boolean failed;
+
+    public OffloadingTransformationStream(HttpHeaders headers, PolicyChain policyChain,
+                                          Function<Buffer, Buffer> transformation, TransformationExecutor executor,
+                                          int threshold, long timeout, SourceLimits limits) {
+        this.headers = headers;
+        this.policyChain = policyChain;
+        this.transformation = transformation;
+        this.executor = executor;
+        this.threshold = threshold;
+        this.timeout = timeout;
+        this.limits = limits;
+    }
+
+    @Override
+    public SimpleReadWriteStream<Buffer> write(Buffer content) {
+        if (failed) {
+            return this;
+        }
+
+        if (exceedsMaxSize(content)) {
+            buffer = null;
+            failed = true;
+            TransformationErrors.increment(TransformationErrors.Cause.LIMIT);
+            fail(limits.sizeExceeded());
+            return this;
+        }
+
+        if (buffer == null) {
+            buffer = Buffer.buffer();
+        }
+
+        buffer.appendBuffer(content);
+        return this;
+    }
+
+    @Override
+    public void end() {
+        if (failed) {
+            return;
+        }
+
+        Buffer content = (buffer != null) ? buffer : Buffer.buffer();
+        buffer = null;
+
+        if (content.length() < threshold) {
+            Buffer result;
+            try {
+                result = transformation.apply(content);
+            } catch (Exception ex) {
+                fail(ex);
+                return;
+            }
+
+            flush(result);
+        } else {
+            executor.execute(() -> transformation.apply(content), timeout, this::flush, this::fail);
+        }
+    }
+
+    /**
+     * The declared content length is checked as soon as the content starts, before anything is buffered.
+     */
+    private boolean exceedsMaxSize(Buffer content) {
+        if (size == 0 && limits.exceedsSize(headers)) {
+            return true;
+        }
+
+        size += content.length();
+        return limits.exceedsSize(size);
+    }
+
+    private void flush(Buffer result) {
+        headers.remove(HttpHeaders.TRANSFER_ENCODING);
+        headers.set(HttpHeaders.CONTENT_LENGTH, Integer.toString(result.length()));
+
+        super.write(result);
+        super.end();
+    }
+
+    private void fail(Throwable throwable) {
+        if (policyChain != null) {
+            int status = (throwable instanceof RejectedTransformationException) ? 503
+                    : (throwable instanceof LimitExceededException) ? ((LimitExceededException) throwable).getStatus()
+                    : 500;
+            policyChain.streamFailWith(PolicyResult.failure(status, throwable.getMessage()));
+        } else {
+            super.end();
+        }
+    }
+}
@@ -0,0 +1,32 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xslt.stream;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * @author GraviteeSource Team
+ */
+@FunctionalInterface
+public interface StreamTransformation {
+
+    /**
+     * @return <code>false</code> if the transformation does not apply to the content: nothing has been written, and
+     *         the content must be passed through as is.
+     */
+    boolean transform(InputStream input, OutputStream output) throws Exception;
+}
@@ -0,0 +1,150 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xslt.stream;
+
+import io.gravitee.common.http.HttpHeaders;
+import io.gravitee.gateway.api.buffer.Buffer;
+import io.gravitee.gateway.api.stream.BufferedReadWriteStream;
+import io.gravitee.gateway.api.stream.SimpleReadWriteStream;
+import io.gravitee.policy.api.PolicyChain;
+import io.gravitee.policy.api.PolicyResult;
+import io.gravitee.policy.xslt.limit.LimitExceededException;
+import io.gravitee.policy.xslt.limit.SourceLimits;
+import io.gravitee.policy.xslt.metrics.TransformationErrors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link io.gravitee.gateway.api.stream.ReadWriteStream} which keeps incoming chunks as they are received, and
+ * writes the transformation result downstream chunk by chunk while it is being serialized.
+ *
+ * Because the size of the result is not known before the transformation ends, the content is sent using chunked
+ * transfer encoding. Any other header, such as the content type, must be set by the transformation before it starts
+ * writing its result. If the transformation fails once part of the result has been sent, the stream is failed
+ * without being ended, so that the downstream is aborted rather than completed with a truncated body.
+ *
+ * When the transformation does not apply to the content, the chunks received are passed through as is.
+ *
+ * The maximum size of the source limits is enforced while the content is received: a content declaring, or reaching,
+ * a larger size fails the stream at once, and the rest of it is discarded instead of being kept.
+ *
+ * @author GraviteeSource Team
+ */
+public class StreamingTransformationStream extends BufferedReadWriteStream {
+
+    private final Logger LOGGER = LoggerFactory.getLogger(StreamingTransformationStream.class);
+
+    private final List<Buffer> chunks = new ArrayList<>();
+
+    private final HttpHeaders headers;
+
+    private final PolicyChain policyChain;
+
+    private final StreamTransformation transformation;
+
+    private final SourceLimits limits;
+
+    private final boolean retainContent;
+
+    private long size;
+
+    private boolean failed;
+
+    /**
+     * @param retainContent <code>true</code> to keep the chunks while the transformation reads them, when it may not
+     *                      apply to the content once read. Otherwise each chunk is released as soon as it is read.
+     */
+    public StreamingTransformationStream(HttpHeaders headers, PolicyChain policyChain, StreamTransformation transformation,
+                                         SourceLimits limits, boolean retainContent) {
+        this.headers = headers;
+        this.policyChain = policyChain;
+        this.transformation = transformation;
+        this.limits = limits;
+        this.retainContent = retainContent;
+    }
+
+    @Override
+    public SimpleReadWriteStream<Buffer> write(Buffer content) {
+        if (failed) {
+            return this;
+        }
+
+        if (exceedsMaxSize(content)) {
+            chunks.clear();
+            failed = true;
+            TransformationErrors.increment(TransformationErrors.Cause.LIMIT);
+            LimitExceededException limitExceeded = limits.sizeExceeded();
+            policyChain.streamFailWith(PolicyResult.failure(limitExceeded.getStatus(), limitExceeded.getMessage()));
+            return this;
+        }
+
+        chunks.add(content);
+        return this;
+    }
+
+    @Override
+    public void end() {
+        if (failed) {
+            return;
+        }
+
+        headers.remove(HttpHeaders.CONTENT_LENGTH);
+        headers.set(HttpHeaders.TRANSFER_ENCODING, "chunked");
+
+        ChunkedBufferOutputStream output = new ChunkedBufferOutputStream(super::write);
+
+        try {
+            if (transformation.transform(new BufferChunksInputStream(chunks, !retainContent), output)) {
+                output.close();
+            } else {
+                chunks.forEach(super::write);
+            }
+        } catch (Exception ex) {
+            if (output.hasEmitted()) {
+                // Part of the result has already been sent: never terminate the chunked body normally, the client
+                // would take the truncated result for a complete one
+                LOGGER.error("An error occurs while streaming XSL transformation result", ex);
+                policyChain.streamFailWith(PolicyResult.failure(500,
+                        "XSL Transformation failed after part of the result has been sent: " + ex.getMessage()));
+            } else {
+                LimitExceededException limitExceeded = LimitExceededException.find(ex);
+                policyChain.streamFailWith((limitExceeded != null)
+                        ? PolicyResult.failure(limitExceeded.getStatus(), limitExceeded.getMessage())
+                        : PolicyResult.failure(500, "Unable to apply XSL Transformation: " + ex.getMessage()));
+            }
+            return;
+        } finally {
+            chunks.clear();
+        }
+
+        super.end();
+    }
+
+    /**
+     * The declared content length is checked as soon as the content starts, before anything is kept.
+     */
+    private boolean exceedsMaxSize(Buffer content) {
+        if (size == 0 && limits.exceedsSize(headers)) {
+            return true;
+        }
+
+        size += content.length();
+        return limits.exceedsSize(size);
+    }
+}
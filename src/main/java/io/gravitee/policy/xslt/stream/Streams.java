@@ -0,0 +1,53 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xslt.stream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * @author GraviteeSource Team
+ */
+public final class Streams {
+
+    private static final int COPY_BUFFER_SIZE = 8192;
+
+    private Streams() {
+    }
+
+    /**
+     * Reads until the array is full or the end of the stream is reached.
+     *
+     * @return the number of bytes read.
+     */
+    public static int readFully(InputStream input, byte[] bytes) throws IOException {
+        int length = 0;
+        int read;
+        while (length < bytes.length && (read = input.read(bytes, length, bytes.length - length)) != -1) {
+            length += read;
+        }
+        return length;
+    }
+
+    public static void copy(InputStream input, OutputStream output) throws IOException {
+        byte[] buffer = new byte[COPY_BUFFER_SIZE];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            output.write(buffer, 0, read);
+        }
+    }
+}
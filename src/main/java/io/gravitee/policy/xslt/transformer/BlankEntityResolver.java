@@ -0,0 +1,37 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xslt.transformer;
+
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+
+/**
+ * Do not allow unknown entities, by returning a blank input source.
+ *
+ * @author GraviteeSource Team
+ */
+public final class BlankEntityResolver implements EntityResolver {
+
+    public static final BlankEntityResolver INSTANCE = new BlankEntityResolver();
+
+    private BlankEntityResolver() {
+    }
+
+    @Override
+    public InputSource resolveEntity(String publicId, String systemId) {
+        return new InputSource();
+    }
+}
@@ -0,0 +1,53 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xslt.transformer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Stylesheet modules bundled in the classpath. Bundled modules never change, so they are loaded once.
+ *
+ * @author GraviteeSource Team
+ */
+class ClasspathStylesheetRepository extends StylesheetRepository {
+
+    private final String prefix;
+
+    ClasspathStylesheetRepository(String location) {
+        String prefix = location.startsWith("/") ? location.substring(1) : location;
+        this.prefix = (prefix.isEmpty() || prefix.endsWith("/")) ? prefix : prefix + '/';
+    }
+
+    @Override
+    protected byte[] load(String path) throws IOException {
+        try (InputStream input = ClasspathStylesheetRepository.class.getClassLoader().getResourceAsStream(prefix + path)) {
+            if (input == null) {
+                throw new FileNotFoundException(CLASSPATH_PREFIX + prefix + path);
+            }
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+            return output.toByteArray();
+        }
+    }
+}
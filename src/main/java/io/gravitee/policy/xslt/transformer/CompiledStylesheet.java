@@ -0,0 +1,252 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xslt.transformer;
+
+import io.gravitee.common.http.MediaType;
+import net.sf.saxon.Controller;
+import net.sf.saxon.s9api.Processor;
+import net.sf.saxon.s9api.QName;
+import net.sf.saxon.s9api.SaxonApiException;
+import net.sf.saxon.s9api.Serializer;
+import net.sf.saxon.s9api.XdmNode;
+import net.sf.saxon.s9api.XdmValue;
+import net.sf.saxon.s9api.Xslt30Transformer;
+import net.sf.saxon.s9api.XsltExecutable;
+import net.sf.saxon.s9api.XsltTransformer;
+
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.URIResolver;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Compiled stylesheet keeping a bounded pool of reusable {@link XsltTransformer}s.
+ *
+ * @author GraviteeSource Team
+ */
+public class CompiledStylesheet {
+
+    static final int DEFAULT_POOL_SIZE = Runtime.getRuntime().availableProcessors() * 2;
+
+    private static final String DEFAULT_ENCODING = "UTF-8";
+
+    private static final String JSON_METHOD = "json";
+
+    private static final String MEDIA_TYPE = "media-type";
+
+    private static final OutputStream DISCARD = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    private final XsltExecutable executable;
+
+    private final BlockingQueue<XsltTransformer> transformers;
+
+    /**
+     * URIs of the stylesheet repository modules included or imported by the stylesheet
+     */
+    private final Set<String> modules;
+
+    private volatile boolean stale;
+
+    private final String contentType;
+
+    private final boolean json;
+
+    private final AtomicBoolean warmingUp = new AtomicBoolean();
+
+    private volatile boolean warmedUp;
+
+    public CompiledStylesheet(XsltExecutable executable) {
+        this(executable, Collections.emptySet());
+    }
+
+    public CompiledStylesheet(XsltExecutable executable, Set<String> modules) {
+        this(executable, modules, DEFAULT_POOL_SIZE);
+    }
+
+    CompiledStylesheet(XsltExecutable executable, int poolSize) {
+        this(executable, Collections.emptySet(), poolSize);
+    }
+
+    private CompiledStylesheet(XsltExecutable executable, Set<String> modules, int poolSize) {
+        this.executable = executable;
+        this.modules = modules;
+        this.transformers = new ArrayBlockingQueue<>(poolSize);
+        this.json = JSON_METHOD.equals(getOutputProperties().getProperty(OutputKeys.METHOD));
+        this.contentType = contentType(getOutputProperties(), json);
+    }
+
+    public XsltExecutable getExecutable() {
+        return executable;
+    }
+
+    /**
+     * @return the serialization properties declared by the <code>xsl:output</code> of the stylesheet.
+     */
+    public Properties getOutputProperties() {
+        return executable.getUnderlyingCompiledStylesheet().getDefaultOutputProperties();
+    }
+
+    /**
+     * @return <code>true</code> if the stylesheet declares the XSLT 3.0 <code>json</code> output method, its result,
+     * such as maps and arrays, being serialized as JSON.
+     */
+    public boolean isJson() {
+        return json;
+    }
+
+    /**
+     * Result is serialized using the encoding declared by the <code>xsl:output</code> of the stylesheet.
+     *
+     * @return the content type of the transformation result.
+     */
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * Returns an idle transformer, or loads a new one if none is available. Transformers are not thread-safe and must
+     * be given back through {@link #release(XsltTransformer)} once the transformation is complete.
+     */
+    public XsltTransformer acquire() {
+        XsltTransformer transformer = transformers.poll();
+        return (transformer != null) ? transformer : executable.load();
+    }
+
+    /**
+     * Clears the parameters, source, destination and loaded documents of the transformer and makes it available again. The transformer
+     * is discarded if the pool is already full.
+     */
+    public void release(XsltTransformer transformer) {
+        transformer.clearParameters();
+        transformer.setInitialContextNode(null);
+        transformer.setDestination(null);
+
+        // Documents loaded by document() must not be served to the next transformation, except the reference documents
+        // shared by all of them, whose key indexes must be kept
+        Controller controller = transformer.getUnderlyingController();
+        URIResolver resolver = transformer.getURIResolver();
+        if (resolver instanceof ReferenceDocuments) {
+            ((ReferenceDocuments) resolver).detach(controller.getDocumentPool());
+        }
+        transformer.setURIResolver(null);
+        controller.clearDocumentPool();
+        transformers.offer(transformer);
+    }
+
+    public boolean dependsOn(String module) {
+        return modules.contains(module);
+    }
+
+    /**
+     * @return <code>true</code> if one of the modules of the stylesheet has been updated since its compilation.
+     */
+    public boolean isStale() {
+        return stale;
+    }
+
+    void invalidate() {
+        stale = true;
+    }
+
+    /**
+     * Applies a stylesheet declaring the <code>json</code> output method: maps and arrays can not be written to a result
+     * tree, so the stylesheet is run through a new {@link Xslt30Transformer} returning them as is, then serialized.
+     */
+    public void transformToJson(XdmNode source, Map<QName, XdmValue> parameters, URIResolver resolver,
+                                OutputStream output) throws SaxonApiException {
+        Xslt30Transformer transformer = executable.load30();
+        transformer.setStylesheetParameters(parameters);
+        if (resolver != null) {
+            transformer.setURIResolver(resolver);
+        }
+        transformer.setGlobalContextItem(source);
+        XdmValue result = transformer.applyTemplates(source);
+
+        Serializer serializer = transformer.newSerializer(output);
+        serializer.setOutputProperty(Serializer.Property.METHOD, JSON_METHOD);
+        serializer.serializeXdmValue(result);
+    }
+
+    /**
+     * @return <code>true</code> once the stylesheet has been warmed up, successfully or not.
+     */
+    public boolean isWarmedUp() {
+        return warmedUp;
+    }
+
+    /**
+     * Applies the stylesheet the given number of times to a sample document, so that its first requests do not run
+     * through the interpreted and not yet optimized code paths. The stylesheet is only warmed up once: other callers
+     * return immediately, without waiting for the warm-up to complete.
+     *
+     * @param parameters the parameter values known before any request, such as the required parameters.
+     * @param resolver the resolver of the reference documents, or <code>null</code> if none.
+     * @return the time spent warming up, in nanoseconds, or 0 if the stylesheet is already being warmed up.
+     */
+    long warmUp(Processor processor, XdmNode sample, Map<QName, XdmValue> parameters, URIResolver resolver,
+                int iterations) throws SaxonApiException {
+        if (!warmingUp.compareAndSet(false, true)) {
+            return 0;
+        }
+
+        long start = System.nanoTime();
+        try {
+            for (int i = 0; i < iterations; i++) {
+                if (json) {
+                    transformToJson(sample, parameters, resolver, DISCARD);
+                } else {
+                    XsltTransformer transformer = acquire();
+                    parameters.forEach(transformer::setParameter);
+                    if (resolver != null) {
+                        transformer.setURIResolver(resolver);
+                    }
+                    transformer.setInitialContextNode(sample);
+                    transformer.setDestination(processor.newSerializer(DISCARD));
+                    transformer.transform();
+                    release(transformer);
+                }
+            }
+        } finally {
+            // A stylesheet failing on the sample document is not warmed up again
+            warmedUp = true;
+        }
+
+        return System.nanoTime() - start;
+    }
+
+    private static String contentType(Properties outputProperties, boolean json) {
+        String mediaType = outputProperties.getProperty(MEDIA_TYPE);
+        if (mediaType == null) {
+            mediaType = json ? MediaType.APPLICATION_JSON : MediaType.APPLICATION_XML;
+        }
+        String encoding = outputProperties.getProperty(OutputKeys.ENCODING);
+        return mediaType + "; charset=" + ((encoding != null) ? encoding : DEFAULT_ENCODING);
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xslt.transformer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Stylesheet modules stored in a local directory. The directory is watched, and listeners are notified as soon as a
+ * module is created, updated or deleted.
+ *
+ * @author GraviteeSource Team
+ */
+class DirectoryStylesheetRepository extends StylesheetRepository {
+
+    private final Logger LOGGER = LoggerFactory.getLogger(DirectoryStylesheetRepository.class);
+
+    private final Path root;
+
+    private final WatchService watchService;
+
+    DirectoryStylesheetRepository(String location) throws IOException {
+        this.root = Paths.get(location).toAbsolutePath().normalize();
+        if (!Files.isDirectory(root)) {
+            throw new FileNotFoundException("Stylesheet repository " + root + " is not a directory");
+        }
+
+        this.watchService = FileSystems.getDefault().newWatchService();
+        register(root);
+
+        Thread watcher = new Thread(this::watch, "gio-xslt-repository-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    @Override
+    protected byte[] load(String path) throws IOException {
+        Path file = root.resolve(path).normalize();
+        if (!file.startsWith(root)) {
+            throw new FileNotFoundException(path);
+        }
+
+        return Files.readAllBytes(file);
+    }
+
+    void close() throws IOException {
+        watchService.close();
+    }
+
+    private void register(Path directory) throws IOException {
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                Path directory = (Path) key.watchable();
+
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        changedAll();
+                        continue;
+                    }
+
+                    Path path = directory.resolve((Path) event.context());
+                    if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+                        register(path);
+                    }
+
+                    LOGGER.debug("Stylesheet module {} has been updated", path);
+                    changed(root.relativize(path).toString().replace('\\', '/'));
+                }
+
+                key.reset();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ex) {
+            // Repository is closed
+        } catch (IOException ioe) {
+            LOGGER.error("Stylesheet repository {} is no longer watched", root, ioe);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xslt.transformer;
+
+import io.gravitee.gateway.api.stream.exception.TransformationException;
+import io.gravitee.policy.xslt.configuration.ReferenceDocument;
+import net.sf.saxon.om.DocumentPool;
+import net.sf.saxon.om.NodeInfo;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+import javax.xml.transform.Source;
+import javax.xml.transform.URIResolver;
+import javax.xml.transform.sax.SAXSource;
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link URIResolver} serving static reference documents, such as lookup tables, to the <code>document()</code>
+ * function of the stylesheets.
+ *
+ * Documents are parsed once, and the same immutable tree is returned to every transformation: lookups do not parse
+ * anything on the request path, and the <code>xsl:key</code> indexes built on a tree are kept by the compiled
+ * stylesheet for the next transformations. Any other URI is resolved as usual.
+ *
+ * Documents are parsed by the first request reaching the policy configuration, and shared by the next ones.
+ *
+ * @author GraviteeSource Team
+ */
+public class ReferenceDocuments implements URIResolver {
+
+    private static final ReferenceDocuments EMPTY = new ReferenceDocuments(Collections.emptyMap());
+
+    private final Map<String, NodeInfo> documents;
+
+    private ReferenceDocuments(Map<String, NodeInfo> documents) {
+        this.documents = documents;
+    }
+
+    public static ReferenceDocuments of(List<ReferenceDocument> documents) {
+        if (documents == null || documents.isEmpty()) {
+            return EMPTY;
+        }
+
+        Map<String, NodeInfo> trees = new HashMap<>();
+        for (ReferenceDocument document : documents) {
+            trees.put(document.getName(), build(document));
+        }
+
+        return new ReferenceDocuments(trees);
+    }
+
+    public boolean isEmpty() {
+        return documents.isEmpty();
+    }
+
+    /**
+     * Removes the reference trees from the document pool of a transformation, so that clearing the pool once the
+     * transformation is complete does not discard the <code>xsl:key</code> indexes built on them.
+     */
+    void detach(DocumentPool pool) {
+        for (NodeInfo document : documents.values()) {
+            pool.discard(document.getTreeInfo());
+        }
+    }
+
+    @Override
+    public Source resolve(String href, String base) {
+        return documents.get(href);
+    }
+
+    private static NodeInfo build(ReferenceDocument document) {
+        try {
+            XMLReader reader = XMLReaders.acquire();
+            try {
+                SAXSource source = new SAXSource(reader, new InputSource(new StringReader(document.getContent())));
+                source.setSystemId(document.getName());
+                return TransformerFactory.getInstance().getProcessor().newDocumentBuilder().build(source)
+                        .getUnderlyingNode();
+            } finally {
+                XMLReaders.release(reader);
+            }
+        } catch (Exception ex) {
+            throw new TransformationException("Unable to load reference document " + document.getName() + ": "
+                    + ex.getMessage(), ex);
+        }
+    }
+}
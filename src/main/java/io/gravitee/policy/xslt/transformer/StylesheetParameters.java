@@ -0,0 +1,118 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xslt.transformer;
+
+import io.gravitee.gateway.api.ExecutionContext;
+import io.gravitee.policy.xslt.configuration.XSLTParameter;
+import net.sf.saxon.s9api.ItemType;
+import net.sf.saxon.s9api.QName;
+import net.sf.saxon.s9api.SaxonApiException;
+import net.sf.saxon.s9api.XdmAtomicValue;
+import net.sf.saxon.s9api.XdmValue;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stylesheet parameters, classified once per policy configuration: constant values are converted to XDM values up
+ * front, while values containing an EL expression are evaluated for each request.
+ *
+ * @author GraviteeSource Team
+ */
+public final class StylesheetParameters {
+
+    private static final StylesheetParameters EMPTY = new StylesheetParameters(Collections.emptyMap(), Collections.emptyMap());
+
+    private final Map<QName, XdmValue> constants;
+
+    private final Map<QName, String> expressions;
+
+    private StylesheetParameters(Map<QName, XdmValue> constants, Map<QName, String> expressions) {
+        this.constants = constants;
+        this.expressions = expressions;
+    }
+
+    public static StylesheetParameters of(List<XSLTParameter> parameters) {
+        if (parameters == null || parameters.isEmpty()) {
+            return EMPTY;
+        }
+
+        Map<QName, XdmValue> constants = new LinkedHashMap<>();
+        Map<QName, String> expressions = new LinkedHashMap<>();
+
+        for (XSLTParameter parameter : parameters) {
+            if (parameter.getName() != null && ! parameter.getName().trim().isEmpty() && parameter.getValue() != null) {
+                QName name = new QName(parameter.getName());
+                if (isExpression(parameter.getValue())) {
+                    expressions.put(name, parameter.getValue());
+                } else {
+                    constants.put(name, toXdmValue(parameter.getValue()));
+                }
+            }
+        }
+
+        return new StylesheetParameters(Collections.unmodifiableMap(constants), Collections.unmodifiableMap(expressions));
+    }
+
+    /**
+     * @return the values of the parameters without any EL expression, as an unmodifiable map.
+     */
+    public Map<QName, XdmValue> getConstants() {
+        return constants;
+    }
+
+    /**
+     * Evaluates the EL parameters for the current request. The template engine is not used at all when every
+     * parameter is constant.
+     *
+     * @return the parameter values, as an unmodifiable map.
+     */
+    public Map<QName, XdmValue> resolve(ExecutionContext executionContext) {
+        if (expressions.isEmpty()) {
+            return constants;
+        }
+
+        Map<QName, XdmValue> values = new HashMap<>(constants);
+        expressions.forEach((name, expression) -> {
+            String value = executionContext.getTemplateEngine().getValue(expression, String.class);
+            if (value != null) {
+                values.put(name, toXdmValue(value));
+            }
+        });
+
+        return Collections.unmodifiableMap(values);
+    }
+
+    /**
+     * A plain value is returned unchanged by the template engine, so anything without a brace is a constant.
+     */
+    private static boolean isExpression(String value) {
+        return value.indexOf('{') != -1;
+    }
+
+    private static XdmValue toXdmValue(String value) {
+        try {
+            // Untyped, so that the value is converted to the type declared by the xsl:param
+            return new XdmAtomicValue(value, ItemType.UNTYPED_ATOMIC);
+        } catch (SaxonApiException saex) {
+            // Any lexical form is a valid xs:untypedAtomic
+            throw new IllegalArgumentException(saex);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xslt.transformer;
+
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.URIResolver;
+import javax.xml.transform.stream.StreamSource;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Repository of the stylesheet modules which can be shared by the APIs through <code>xsl:include</code> and
+ * <code>xsl:import</code>.
+ *
+ * Modules are identified by <code>repository:/</code> URIs, relative hrefs of the configured stylesheets being
+ * resolved against the root of the repository. Modules are kept in memory once loaded, and any href pointing outside
+ * of the repository is rejected.
+ *
+ * @author GraviteeSource Team
+ */
+public abstract class StylesheetRepository {
+
+    public static final String SCHEME = "repository";
+
+    /**
+     * Base URI of the configured stylesheets
+     */
+    public static final String ROOT = SCHEME + ":/";
+
+    static final String CLASSPATH_PREFIX = "classpath:";
+
+    private static final URI ROOT_URI = URI.create(ROOT);
+
+    private final ConcurrentMap<String, byte[]> modules = new ConcurrentHashMap<>();
+
+    private final List<Consumer<String>> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param location a local directory, or a <code>classpath:</code> prefixed location.
+     */
+    public static StylesheetRepository of(String location) throws IOException {
+        if (location.startsWith(CLASSPATH_PREFIX)) {
+            return new ClasspathStylesheetRepository(location.substring(CLASSPATH_PREFIX.length()));
+        }
+
+        return new DirectoryStylesheetRepository(location);
+    }
+
+    /**
+     * Returns a resolver serving the modules of the repository, and collecting the URIs of the resolved modules into
+     * <code>dependencies</code>.
+     */
+    public URIResolver resolver(Set<String> dependencies) {
+        return (href, base) -> {
+            URI uri;
+            try {
+                uri = ((base == null || base.isEmpty()) ? ROOT_URI : new URI(base)).resolve(new URI(href)).normalize();
+            } catch (Exception ex) {
+                throw new TransformerException("Invalid stylesheet module URI: " + href, ex);
+            }
+
+            String path = uri.getPath();
+            if (!SCHEME.equals(uri.getScheme()) || path == null || path.startsWith("/..")) {
+                throw new TransformerException("Stylesheet module " + href + " is outside of the stylesheet repository");
+            }
+
+            String module = uri.toString();
+            byte[] content = modules.get(module);
+            if (content == null) {
+                try {
+                    content = load(path.substring(1));
+                } catch (IOException ioe) {
+                    throw new TransformerException("Unable to load stylesheet module " + href, ioe);
+                }
+                modules.putIfAbsent(module, content);
+            }
+
+            dependencies.add(module);
+            return new StreamSource(new ByteArrayInputStream(content), module);
+        };
+    }
+
+    /**
+     * Registers a listener notified with the URI of each module updated in the repository.
+     */
+    public void addListener(Consumer<String> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @param path path of the module, relative to the root of the repository.
+     */
+    protected abstract byte[] load(String path) throws IOException;
+
+    protected void changed(String path) {
+        String module = ROOT + path;
+        modules.remove(module);
+        listeners.forEach(listener -> listener.accept(module));
+    }
+
+    /**
+     * Notifies the listeners that all the modules loaded so far may have been updated.
+     */
+    protected void changedAll() {
+        for (String module : modules.keySet()) {
+            changed(module.substring(ROOT.length()));
+        }
+    }
+}
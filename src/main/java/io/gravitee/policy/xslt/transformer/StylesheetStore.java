@@ -0,0 +1,190 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xslt.transformer;
+
+import net.sf.saxon.Version;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * On-disk store of the compiled stylesheets which do not depend on the request, used to compile them again as soon as
+ * the gateway starts instead of on the first requests.
+ *
+ * Saxon-HE can not export a compiled stylesheet, so the store keeps the stylesheets themselves, named after their
+ * cache key, in a <code>saxon-&lt;version&gt;</code> directory per Saxon version. Files whose content does not match
+ * their name, and directories of other Saxon versions, are deleted. The store may be located in a directory shared
+ * with other data: nothing is deleted unless it was created by the store.
+ *
+ * @author GraviteeSource Team
+ */
+public class StylesheetStore {
+
+    private static final String EXTENSION = ".xsl";
+
+    private static final String TEMP_EXTENSION = ".tmp";
+
+    private static final String DIRECTORY_PREFIX = "saxon-";
+
+    private final Logger LOGGER = LoggerFactory.getLogger(StylesheetStore.class);
+
+    private final Path root;
+
+    private final Path directory;
+
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "gio-xslt-store");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public StylesheetStore(String location) throws IOException {
+        this.root = Paths.get(location).toAbsolutePath().normalize();
+        this.directory = root.resolve(DIRECTORY_PREFIX + Version.getProductVersion());
+        Files.createDirectories(directory);
+    }
+
+    Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Waits for the pending writes to complete.
+     */
+    void flush() throws Exception {
+        writer.submit(() -> { }).get();
+    }
+
+    /**
+     * Stores the stylesheet asynchronously, so that the request path is never blocked by disk I/O.
+     */
+    public void save(String key, String xslt) {
+        writer.execute(() -> {
+            Path file = directory.resolve(key + EXTENSION);
+            try {
+                if (Files.exists(file)) {
+                    Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+                    return;
+                }
+
+                // Written aside, then moved, so that a partially written file is never loaded
+                Path temp = Files.createTempFile(directory, key, TEMP_EXTENSION);
+                Files.write(temp, xslt.getBytes(StandardCharsets.UTF_8));
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException ioe) {
+                LOGGER.warn("Unable to store stylesheet {} in {}", key, directory, ioe);
+            }
+        });
+    }
+
+    /**
+     * Loads the most recently stored stylesheets, by key. Stylesheets exceeding <code>maxEntries</code> are deleted.
+     */
+    public Map<String, String> load(int maxEntries) throws IOException {
+        deleteOtherVersions();
+
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(EXTENSION)) {
+                    files.add(file);
+                } else if (name.endsWith(TEMP_EXTENSION)) {
+                    // Leftover of an interrupted write
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+
+        files.sort(Comparator.comparing(StylesheetStore::lastModified).reversed());
+
+        Map<String, String> stylesheets = new LinkedHashMap<>();
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            String key = name.substring(0, name.length() - EXTENSION.length());
+            String xslt = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+
+            if (stylesheets.size() >= maxEntries || !key.equals(TransformerFactory.key(xslt))) {
+                Files.deleteIfExists(file);
+            } else {
+                stylesheets.put(key, xslt);
+            }
+        }
+
+        return stylesheets;
+    }
+
+    private void deleteOtherVersions() throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(root,
+                path -> Files.isDirectory(path) && path.getFileName().toString().startsWith(DIRECTORY_PREFIX))) {
+            for (Path version : stream) {
+                if (!version.equals(directory) && containsOnlyStylesheets(version)) {
+                    LOGGER.info("Deleting stylesheets stored for {}", version.getFileName());
+                    delete(version);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the directory only contains files written by a store: stylesheets and leftovers of
+     *         interrupted writes.
+     */
+    private static boolean containsOnlyStylesheets(Path directory) throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                if (!Files.isRegularFile(file) || !(name.endsWith(EXTENSION) || name.endsWith(TEMP_EXTENSION))) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path file : stream) {
+                Files.deleteIfExists(file);
+            }
+        }
+        Files.deleteIfExists(directory);
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException ioe) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xslt.transformer;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters exposed by the compiled stylesheet cache of the {@link TransformerFactory}.
+ *
+ * @author GraviteeSource Team
+ */
+public final class TemplateCacheStats {
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder compilations = new LongAdder();
+    private final LongAdder compileTime = new LongAdder();
+    private final LongAdder warmups = new LongAdder();
+    private final LongAdder warmupTime = new LongAdder();
+
+    void hit() {
+        hits.increment();
+    }
+
+    void miss() {
+        misses.increment();
+    }
+
+    void eviction() {
+        evictions.increment();
+    }
+
+    void compiled(long nanos) {
+        compilations.increment();
+        compileTime.add(nanos);
+    }
+
+    void warmedUp(long nanos) {
+        warmups.increment();
+        warmupTime.add(nanos);
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public long getCompilations() {
+        return compilations.sum();
+    }
+
+    /**
+     * @return the cumulated time spent compiling stylesheets, in nanoseconds.
+     */
+    public long getCompileTime() {
+        return compileTime.sum();
+    }
+
+    /**
+     * @return the number of stylesheets warmed up before their first request.
+     */
+    public long getWarmups() {
+        return warmups.sum();
+    }
+
+    /**
+     * @return the cumulated time spent warming up stylesheets, in nanoseconds.
+     */
+    public long getWarmupTime() {
+        return warmupTime.sum();
+    }
+}
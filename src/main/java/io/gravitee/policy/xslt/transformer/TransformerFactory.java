@@ -15,18 +15,31 @@
  */
 package io.gravitee.policy.xslt.transformer;
 
-import io.gravitee.policy.xslt.transformer.saxon.SaxonTransformerFactory;
-import io.gravitee.policy.xslt.utils.Sha1;
+import io.gravitee.policy.xslt.utils.Murmur3;
+import net.sf.saxon.lib.FeatureKeys;
+import net.sf.saxon.s9api.Processor;
+import net.sf.saxon.s9api.QName;
+import net.sf.saxon.s9api.SaxonApiException;
+import net.sf.saxon.s9api.XdmNode;
+import net.sf.saxon.s9api.XdmValue;
+import net.sf.saxon.s9api.XsltCompiler;
+import net.sf.saxon.s9api.XsltExecutable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Templates;
-import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.URIResolver;
 import javax.xml.transform.stream.StreamSource;
+import java.io.IOException;
 import java.io.StringReader;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author David BRASSELY (david.brassely at graviteesource.com)
@@ -34,37 +47,318 @@ import java.util.Map;
  */
 public final class TransformerFactory {
 
+    /**
+     * Maximum number of compiled stylesheets kept in memory.
+     */
+    static final int DEFAULT_MAX_ENTRIES = 256;
+
+    /**
+     * System property locating the repository of shared stylesheet modules: a local directory, or a
+     * <code>classpath:</code> prefixed location.
+     */
+    public static final String REPOSITORY_PROPERTY = "gravitee.policy.xslt.repository";
+
+    /**
+     * System property locating the directory where compiled stylesheets are stored, to be compiled again as soon as
+     * the gateway starts.
+     */
+    public static final String STORE_PROPERTY = "gravitee.policy.xslt.store";
+
     private final Logger LOGGER = LoggerFactory.getLogger(TransformerFactory.class);
 
-    private final Map<String, Templates> templateCache = new HashMap<>();
+    /**
+     * Shared by all the compiled stylesheets, so that name pool, document pool and function libraries are not
+     * duplicated for each of them
+     */
+    private final Processor processor;
+
+    private final ConcurrentMap<String, CachedTemplate> templateCache = new ConcurrentHashMap<>();
+
+    private final TemplateCacheStats stats = new TemplateCacheStats();
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private final int maxEntries;
+
+    private final StylesheetRepository repository;
+
+    private final StylesheetStore store;
+
+    private static TransformerFactory _instance = create();
 
-    private static TransformerFactory _instance = new TransformerFactory();
+    TransformerFactory(int maxEntries) {
+        this(maxEntries, null);
+    }
+
+    TransformerFactory(int maxEntries, StylesheetRepository repository) {
+        this(maxEntries, repository, null);
+    }
+
+    TransformerFactory(int maxEntries, StylesheetRepository repository, StylesheetStore store) {
+        this.maxEntries = maxEntries;
+        this.repository = repository;
+        this.store = store;
+        if (repository != null) {
+            repository.addListener(this::invalidate);
+        }
+        this.processor = new Processor(false);
+        // Secure processing: stylesheets are not allowed to call Java extension functions
+        this.processor.setConfigurationProperty(FeatureKeys.ALLOW_EXTERNAL_FUNCTIONS, Boolean.FALSE);
+    }
 
     public static TransformerFactory getInstance() {
         return _instance;
     }
 
-    public Templates getTemplate(String xslt) throws Exception {
-        String sha1 = Sha1.sha1(xslt);
-        return templateCache.getOrDefault(sha1, createTemplate(xslt));
+    public Processor getProcessor() {
+        return processor;
+    }
+
+    /**
+     * @return the repository of the shared stylesheet modules, or <code>null</code> if none is configured.
+     */
+    public StylesheetRepository getRepository() {
+        return repository;
+    }
+
+    /**
+     * @return the key identifying the stylesheet in the compiled stylesheet cache.
+     */
+    public static String key(String xslt) {
+        return Murmur3.hash128(xslt);
     }
 
-    private Templates createTemplate(String xslt) throws Exception {
-        javax.xml.transform.TransformerFactory factory = getTransformerFactory();
+    public CompiledStylesheet getTemplate(String xslt) throws Exception {
+        return getTemplate(key(xslt), xslt);
+    }
+
+    /**
+     * @param key the key of the stylesheet, as computed by {@link #key(String)}.
+     */
+    public CompiledStylesheet getTemplate(String key, String xslt) throws Exception {
+        return getTemplate(key, xslt, false);
+    }
+
+    /**
+     * @param key the key of the stylesheet, as computed by {@link #key(String)}.
+     * @param persistent <code>true</code> to keep the stylesheet in the store, if any, so that it is compiled as soon
+     *                   as the gateway starts. Stylesheets resulting from expression language may differ for each
+     *                   request and must not be kept.
+     */
+    public CompiledStylesheet getTemplate(String key, String xslt, boolean persistent) throws Exception {
+
+        CachedTemplate cached = templateCache.get(key);
+        if (cached == null) {
+            CachedTemplate candidate = new CachedTemplate(xslt);
+            cached = templateCache.putIfAbsent(key, candidate);
+            if (cached == null) {
+                // This thread won the race: compile outside of the map, concurrent callers wait on the same task
+                stats.miss();
+                cached = candidate;
+                cached.task.run();
+                evictIfNecessary(key);
+            } else {
+                stats.hit();
+            }
+        } else {
+            stats.hit();
+            cached.lastAccess = clock.incrementAndGet();
+        }
+
+        CompiledStylesheet compiled;
+        try {
+            compiled = cached.task.get();
+        } catch (ExecutionException eex) {
+            // Do not keep failures in cache
+            templateCache.remove(key, cached);
+            Throwable cause = eex.getCause();
+            throw (cause instanceof Exception) ? (Exception) cause : eex;
+        }
+
+        if (persistent && store != null) {
+            store.save(key, xslt);
+        }
+
+        return compiled;
+    }
+
+    /**
+     * Compiles the stylesheets kept by the store, most recently used first.
+     *
+     * @return the number of compiled stylesheets.
+     */
+    int preload() throws IOException {
+        int count = 0;
+        for (Map.Entry<String, String> stylesheet : store.load(maxEntries).entrySet()) {
+            try {
+                getTemplate(stylesheet.getKey(), stylesheet.getValue());
+                count++;
+            } catch (Exception ex) {
+                LOGGER.warn("Unable to compile stored stylesheet {}", stylesheet.getKey());
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Warms up the compiled stylesheet, unless it already is.
+     *
+     * @see CompiledStylesheet#warmUp(Processor, XdmNode, Map, URIResolver, int)
+     * @return the time spent warming up, in nanoseconds, or 0 if the stylesheet is already being warmed up.
+     */
+    public long warmUp(CompiledStylesheet stylesheet, XdmNode sample, Map<QName, XdmValue> parameters,
+                       URIResolver resolver, int iterations) throws SaxonApiException {
+        long nanos = stylesheet.warmUp(processor, sample, parameters, resolver, iterations);
+        if (nanos > 0) {
+            stats.warmedUp(nanos);
+        }
+        return nanos;
+    }
+
+    public TemplateCacheStats getStats() {
+        return stats;
+    }
+
+    int size() {
+        return templateCache.size();
+    }
+
+    /**
+     * Evicts the least recently used entries until the cache fits its bound. Scanning is linear but only happens
+     * when a new stylesheet has been compiled, which is already orders of magnitude more expensive.
+     *
+     * @param inserted the key of the stylesheet just compiled, which is never evicted.
+     */
+    private void evictIfNecessary(String inserted) {
+        while (templateCache.size() > maxEntries) {
+            Map.Entry<String, CachedTemplate> eldest = null;
+            for (Map.Entry<String, CachedTemplate> entry : templateCache.entrySet()) {
+                if (entry.getKey().equals(inserted)) {
+                    continue;
+                }
+                if (eldest == null || entry.getValue().lastAccess < eldest.getValue().lastAccess) {
+                    eldest = entry;
+                }
+            }
+
+            if (eldest == null) {
+                return;
+            }
+            if (templateCache.remove(eldest.getKey(), eldest.getValue())) {
+                stats.eviction();
+            }
+        }
+    }
+
+    /**
+     * Drops the compiled stylesheets depending on an updated module, so that they are compiled again on next use.
+     */
+    private void invalidate(String module) {
+        for (Map.Entry<String, CachedTemplate> entry : templateCache.entrySet()) {
+            CompiledStylesheet compiled = entry.getValue().getIfCompiled();
+            if (compiled != null && compiled.dependsOn(module)
+                    && templateCache.remove(entry.getKey(), entry.getValue())) {
+                LOGGER.info("Stylesheet module {} has been updated, dependent stylesheets will be compiled again", module);
+                compiled.invalidate();
+            }
+        }
+    }
+
+    private CompiledStylesheet createTemplate(String xslt) throws Exception {
         StreamSource xslStream = new StreamSource(new StringReader(xslt));
+        XsltCompiler compiler = processor.newXsltCompiler();
+        Set<String> modules = Collections.emptySet();
+        if (repository != null) {
+            // Relative hrefs of xsl:include and xsl:import are resolved against the root of the repository
+            modules = new HashSet<>();
+            compiler.setURIResolver(repository.resolver(modules));
+            xslStream.setSystemId(StylesheetRepository.ROOT);
+        }
+
+        long start = System.nanoTime();
+        try {
+            XsltExecutable executable = compiler.compile(xslStream);
+            return new CompiledStylesheet(executable, modules);
+        } catch (SaxonApiException saex) {
+            LOGGER.error("An error occurs while getting the template from XSLT", saex);
+            throw saex;
+        } finally {
+            stats.compiled(System.nanoTime() - start);
+        }
+    }
+
+    private class CachedTemplate {
+
+        private final FutureTask<CompiledStylesheet> task;
+
+        private volatile long lastAccess;
+
+        CachedTemplate(String xslt) {
+            this.task = new FutureTask<>(() -> createTemplate(xslt));
+            this.lastAccess = clock.incrementAndGet();
+        }
+
+        CompiledStylesheet getIfCompiled() {
+            if (!task.isDone()) {
+                return null;
+            }
+
+            try {
+                return task.get();
+            } catch (Exception ex) {
+                return null;
+            }
+        }
+    }
+
+    private static TransformerFactory create() {
+        TransformerFactory factory = new TransformerFactory(DEFAULT_MAX_ENTRIES, defaultRepository(), defaultStore());
+        if (factory.store != null) {
+            // Compiled in background: requests for a stylesheet being compiled wait for it instead of compiling it
+            Thread preloader = new Thread(() -> {
+                long start = System.currentTimeMillis();
+                try {
+                    int count = factory.preload();
+                    factory.LOGGER.info("{} stored stylesheets compiled in {} ms", count, System.currentTimeMillis() - start);
+                } catch (IOException ioe) {
+                    factory.LOGGER.error("Unable to load stored stylesheets", ioe);
+                }
+            }, "gio-xslt-preload");
+            preloader.setDaemon(true);
+            preloader.start();
+        }
+
+        return factory;
+    }
+
+    private static StylesheetStore defaultStore() {
+        String location = System.getProperty(STORE_PROPERTY);
+        if (location == null || location.isEmpty()) {
+            return null;
+        }
+
         try {
-            Templates templates = factory.newTemplates(xslStream);
-            templates.getOutputProperties().setProperty(OutputKeys.INDENT, "yes");
-            templates.getOutputProperties().setProperty("{http://xml.apache.org/xslt}indent-amount", "3");
-            return templates;
-        } catch (TransformerConfigurationException tcex) {
-            LOGGER.error("An error occurs while getting the template from XSLT", tcex);
-            throw tcex;
+            return new StylesheetStore(location);
+        } catch (IOException ioe) {
+            LoggerFactory.getLogger(TransformerFactory.class)
+                    .error("Unable to open stylesheet store {}, stylesheets are not stored", location, ioe);
+            return null;
         }
     }
 
-    private javax.xml.transform.TransformerFactory getTransformerFactory() {
-        return javax.xml.transform.TransformerFactory.newInstance(
-                SaxonTransformerFactory.class.getName(), this.getClass().getClassLoader());
+    private static StylesheetRepository defaultRepository() {
+        String location = System.getProperty(REPOSITORY_PROPERTY);
+        if (location == null || location.isEmpty()) {
+            return null;
+        }
+
+        try {
+            return StylesheetRepository.of(location);
+        } catch (IOException ioe) {
+            LoggerFactory.getLogger(TransformerFactory.class)
+                    .error("Unable to open stylesheet repository {}, shared modules are disabled", location, ioe);
+            return null;
+        }
     }
 }
@@ -0,0 +1,70 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xslt.transformer;
+
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+/**
+ * Keeps one idle {@link XMLReader} per thread, with the {@link BlankEntityResolver} already installed, so that
+ * neither the JAXP factory lookup nor the parser construction happens on the request path.
+ *
+ * @author GraviteeSource Team
+ */
+public final class XMLReaders {
+
+    private static final SAXParserFactory PARSER_FACTORY = SAXParserFactory.newInstance();
+
+    private static final ThreadLocal<XMLReader> IDLE_READER = new ThreadLocal<>();
+
+    static {
+        PARSER_FACTORY.setNamespaceAware(true);
+    }
+
+    private XMLReaders() {
+    }
+
+    public static XMLReader acquire() throws ParserConfigurationException, SAXException {
+        XMLReader reader = IDLE_READER.get();
+        if (reader != null) {
+            IDLE_READER.remove();
+            return reader;
+        }
+
+        return newReader();
+    }
+
+    public static void release(XMLReader reader) {
+        // Do not retain the handlers of the previous parse
+        reader.setContentHandler(null);
+        reader.setDTDHandler(null);
+        reader.setErrorHandler(null);
+        reader.setEntityResolver(BlankEntityResolver.INSTANCE);
+        IDLE_READER.set(reader);
+    }
+
+    private static XMLReader newReader() throws ParserConfigurationException, SAXException {
+        XMLReader reader;
+        synchronized (PARSER_FACTORY) {
+            reader = PARSER_FACTORY.newSAXParser().getXMLReader();
+        }
+        reader.setEntityResolver(BlankEntityResolver.INSTANCE);
+        return reader;
+    }
+}
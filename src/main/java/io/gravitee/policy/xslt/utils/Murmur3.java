@@ -0,0 +1,126 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xslt.utils;
+
+/**
+ * 128-bit MurmurHash3 (x64 variant), computed over the UTF-16 code units of a string so that no byte array has to be
+ * encoded first. Fast and well distributed, but not cryptographic: it must only be used for cache keys.
+ *
+ * @author GraviteeSource Team
+ */
+public final class Murmur3 {
+
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private Murmur3() {
+    }
+
+    /**
+     * @return the 128-bit hash of the text, as 32 hexadecimal characters.
+     */
+    public static String hash128(CharSequence text) {
+        int length = text.length();
+        long h1 = 0;
+        long h2 = 0;
+
+        // 8 chars make a 16 bytes block
+        int blocks = length >>> 3;
+        for (int i = 0; i < blocks; i++) {
+            int offset = i << 3;
+            long k1 = chars(text, offset, 4);
+            long k2 = chars(text, offset + 4, 4);
+
+            h1 ^= mixK1(k1);
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+
+            h2 ^= mixK2(k2);
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+
+        int offset = blocks << 3;
+        int remaining = length - offset;
+        if (remaining > 4) {
+            h2 ^= mixK2(chars(text, offset + 4, remaining - 4));
+        }
+        if (remaining > 0) {
+            h1 ^= mixK1(chars(text, offset, Math.min(remaining, 4)));
+        }
+
+        long bytes = (long) length << 1;
+        h1 ^= bytes;
+        h2 ^= bytes;
+
+        h1 += h2;
+        h2 += h1;
+
+        h1 = fmix(h1);
+        h2 = fmix(h2);
+
+        h1 += h2;
+        h2 += h1;
+
+        char[] hex = new char[32];
+        toHex(h1, hex, 0);
+        toHex(h2, hex, 16);
+        return new String(hex);
+    }
+
+    /**
+     * Little-endian packing of <code>count</code> (at most 4) chars into a long.
+     */
+    private static long chars(CharSequence text, int offset, int count) {
+        long k = 0;
+        for (int i = 0; i < count; i++) {
+            k |= ((long) text.charAt(offset + i)) << (i << 4);
+        }
+        return k;
+    }
+
+    private static long mixK1(long k1) {
+        k1 *= C1;
+        k1 = Long.rotateLeft(k1, 31);
+        return k1 * C2;
+    }
+
+    private static long mixK2(long k2) {
+        k2 *= C2;
+        k2 = Long.rotateLeft(k2, 33);
+        return k2 * C1;
+    }
+
+    private static long fmix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+
+    private static void toHex(long value, char[] hex, int offset) {
+        for (int i = 15; i >= 0; i--) {
+            hex[offset + i] = HEX[(int) (value & 0x0F)];
+            value >>>= 4;
+        }
+    }
+}
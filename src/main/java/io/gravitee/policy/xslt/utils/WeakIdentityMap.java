@@ -0,0 +1,110 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xslt.utils;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Concurrent map of weakly referenced keys, compared by identity. Unlike a synchronized {@link java.util.WeakHashMap},
+ * lookups neither lock nor expunge anything: entries whose key has been garbage collected are only removed on
+ * insertion.
+ *
+ * @author GraviteeSource Team
+ */
+public final class WeakIdentityMap<K, V> {
+
+    private final ConcurrentMap<Object, V> entries = new ConcurrentHashMap<>();
+
+    private final ReferenceQueue<K> queue = new ReferenceQueue<>();
+
+    public V get(K key) {
+        return entries.get(new Lookup(key));
+    }
+
+    /**
+     * @return the value already associated to the key, or <code>null</code> if the given value has been associated.
+     */
+    public V putIfAbsent(K key, V value) {
+        expungeStaleEntries();
+        return entries.putIfAbsent(new WeakKey<>(key, queue), value);
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public int size() {
+        expungeStaleEntries();
+        return entries.size();
+    }
+
+    private void expungeStaleEntries() {
+        Reference<? extends K> stale;
+        while ((stale = queue.poll()) != null) {
+            entries.remove(stale);
+        }
+    }
+
+    private static final class WeakKey<K> extends WeakReference<K> {
+
+        private final int hash;
+
+        WeakKey(K key, ReferenceQueue<K> queue) {
+            super(key, queue);
+            this.hash = System.identityHashCode(key);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            Object key = get();
+            return key != null && o instanceof WeakKey && ((WeakKey<?>) o).get() == key;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Strongly referenced key, only used for lookups so that they do not create any weak reference.
+     */
+    private static final class Lookup {
+
+        private final Object key;
+
+        Lookup(Object key) {
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof WeakKey && ((WeakKey<?>) o).get() == key;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(key);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xslt.worker;
+
+import io.gravitee.gateway.api.stream.exception.TransformationException;
+import io.gravitee.policy.xslt.metrics.TransformationErrors;
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Bounded pool of worker threads used to run large transformations outside of the gateway event loop.
+ *
+ * The pool is shared by all the policy instances and can be sized with the
+ * <code>gravitee.policy.xslt.worker.threads</code> and <code>gravitee.policy.xslt.worker.queue</code> system
+ * properties.
+ *
+ * @author GraviteeSource Team
+ */
+public final class TransformationExecutor {
+
+    static final int DEFAULT_THREADS = Runtime.getRuntime().availableProcessors();
+
+    static final int DEFAULT_QUEUE_SIZE = 256;
+
+    private static final TransformationExecutor _instance = new TransformationExecutor(
+            Integer.getInteger("gravitee.policy.xslt.worker.threads", DEFAULT_THREADS),
+            Integer.getInteger("gravitee.policy.xslt.worker.queue", DEFAULT_QUEUE_SIZE));
+
+    private final ThreadPoolExecutor executor;
+
+    private final ScheduledThreadPoolExecutor timer;
+
+    TransformationExecutor(int threads, int queueSize) {
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize), new DaemonThreadFactory("gio-xslt-worker-"));
+        this.executor.allowCoreThreadTimeOut(true);
+
+        this.timer = new ScheduledThreadPoolExecutor(1, new DaemonThreadFactory("gio-xslt-timeout-"));
+        this.timer.setRemoveOnCancelPolicy(true);
+    }
+
+    public static TransformationExecutor getInstance() {
+        return _instance;
+    }
+
+    /**
+     * Runs the task on a worker thread. Exactly one of the handlers is called, on completion or if the task did not
+     * complete in time. When called from a Vert.x context, such as the gateway event loop, the handlers run back on
+     * that context, so that the downstream stream is only ever written from its own thread. Otherwise they run on the
+     * worker thread, or on the timer thread for a timeout.
+     *
+     * A task which times out is interrupted: a queued task never starts, and parsing the body is aborted, releasing its
+     * worker. Saxon does not check interruptions though, so a stylesheet already running keeps its worker until it
+     * completes, its result being discarded.
+     *
+     * @param timeout maximum duration of the task in milliseconds, including the time spent in the queue, or
+     *                <code>0</code> for no limit.
+     */
+    public <T> void execute(Supplier<T> task, long timeout, Consumer<T> onSuccess, Consumer<Throwable> onFailure) {
+        Context context = Vertx.currentContext();
+        AtomicBoolean done = new AtomicBoolean();
+        ScheduledFuture<?>[] timeoutFuture = new ScheduledFuture<?>[1];
+
+        Future<?> future;
+        try {
+            future = executor.submit(() -> {
+                try {
+                    T result = task.get();
+                    if (done.compareAndSet(false, true)) {
+                        cancel(timeoutFuture[0]);
+                        runOnContext(context, () -> onSuccess.accept(result));
+                    }
+                } catch (Throwable t) {
+                    if (done.compareAndSet(false, true)) {
+                        cancel(timeoutFuture[0]);
+                        runOnContext(context, () -> onFailure.accept(t));
+                    }
+                }
+            });
+        } catch (RejectedExecutionException ree) {
+            TransformationErrors.increment(TransformationErrors.Cause.REJECTED);
+            onFailure.accept(new RejectedTransformationException(
+                    "Unable to apply XSL Transformation: too many pending transformations", ree));
+            return;
+        }
+
+        if (timeout > 0) {
+            timeoutFuture[0] = timer.schedule(() -> {
+                if (done.compareAndSet(false, true)) {
+                    // Result of the transformation, if it ever completes, is discarded
+                    future.cancel(true);
+                    TransformationErrors.increment(TransformationErrors.Cause.TIMEOUT);
+                    runOnContext(context, () -> onFailure.accept(new TransformationException(
+                            "Unable to apply XSL Transformation: timed out after " + timeout + " ms")));
+                }
+            }, timeout, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    private static void runOnContext(Context context, Runnable handler) {
+        if (context != null) {
+            context.runOnContext(ignored -> handler.run());
+        } else {
+            handler.run();
+        }
+    }
+
+    private static void cancel(ScheduledFuture<?> future) {
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+
+    private static class DaemonThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger counter = new AtomicInteger();
+
+        private final String prefix;
+
+        DaemonThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xslt.worker;
+
+import io.gravitee.gateway.api.stream.exception.TransformationException;
+
+/**
+ * Thrown while the body is read or parsed on a worker thread which has been interrupted, because the transformation
+ * timed out: parsing is aborted and the worker is released.
+ *
+ * @author GraviteeSource Team
+ */
+public class TransformationInterruptedException extends TransformationException {
+
+    public TransformationInterruptedException() {
+        super("XSL Transformation interrupted");
+    }
+
+    /**
+     * Clears the interrupted status of the current thread.
+     *
+     * @throws TransformationInterruptedException if the current thread has been interrupted.
+     */
+    public static void check() {
+        if (Thread.interrupted()) {
+            throw new TransformationInterruptedException();
+        }
+    }
+
+    /**
+     * Parsers may wrap the exceptions raised while reading their input.
+     *
+     * @return <code>true</code> if a {@link TransformationInterruptedException} is one of the causes of the throwable.
+     */
+    public static boolean isCause(Throwable throwable) {
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            if (cause instanceof TransformationInterruptedException) {
+                return true;
+            }
+            if (cause.getCause() == cause) {
+                break;
+            }
+        }
+
+        return false;
+    }
+}
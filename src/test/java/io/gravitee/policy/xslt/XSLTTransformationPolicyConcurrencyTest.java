@@ -0,0 +1,230 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xslt;
+
+import io.gravitee.el.TemplateContext;
+import io.gravitee.el.TemplateEngine;
+import io.gravitee.gateway.api.ExecutionContext;
+import io.gravitee.gateway.api.Request;
+import io.gravitee.gateway.api.Response;
+import io.gravitee.gateway.api.buffer.Buffer;
+import io.gravitee.policy.xslt.configuration.XSLTParameter;
+import io.gravitee.policy.xslt.configuration.XSLTTransformationPolicyConfiguration;
+import io.gravitee.policy.xslt.transformer.TransformerFactory;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs transformations of a single policy from many threads at once, each request with its own stylesheet and
+ * parameter values, to check that compiled stylesheets, pooled transformers and parameters are never shared between
+ * concurrent requests.
+ *
+ * @author GraviteeSource Team
+ */
+public class XSLTTransformationPolicyConcurrencyTest {
+
+    private static final int THREADS = 8;
+
+    private static final int REQUESTS = 4000;
+
+    private static final int TENANTS = 4;
+
+    /**
+     * Allocations of a warm transformation of a small document, parsing and serialization included, about 25 KB on
+     * HotSpot 17
+     */
+    private static final long MAX_ALLOCATED_BYTES_PER_TRANSFORMATION = 128 * 1024;
+
+    @Test
+    public void shouldTransformConcurrentRequestsIndependently() throws Exception {
+        XSLTTransformationPolicy policy = new XSLTTransformationPolicy(configuration());
+        long compilations = TransformerFactory.getInstance().getStats().getCompilations();
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        Queue<String> failures = new ConcurrentLinkedQueue<>();
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int t = 0; t < THREADS; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = thread; i < REQUESTS; i += THREADS) {
+                        String expected = "tenant-" + (i % TENANTS) + ":" + i + ":" + i;
+                        String actual = transform(policy, i);
+                        if (!expected.equals(actual)) {
+                            failures.add("Request " + i + " expected " + expected + " but was " + actual);
+                        }
+                    }
+                    return null;
+                }));
+            }
+
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Assert.assertTrue(failures.size() + " failures, first: " + failures.peek(), failures.isEmpty());
+        // Each distinct stylesheet is compiled once, even when first requested by several threads at once
+        Assert.assertEquals(TENANTS, TransformerFactory.getInstance().getStats().getCompilations() - compilations);
+    }
+
+    @Test
+    public void shouldBoundAllocationsOfWarmTransformations() throws Exception {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+        XSLTTransformationPolicy policy = new XSLTTransformationPolicy(configuration());
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertEquals("tenant-" + (i % TENANTS) + ":" + i + ":" + i, transform(policy, i));
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long allocated = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 1000; i++) {
+            transform(policy, i);
+        }
+        long perTransformation = (threads.getThreadAllocatedBytes(threadId) - allocated) / 1000;
+
+        Assert.assertTrue(perTransformation + " bytes allocated per transformation",
+                perTransformation < MAX_ALLOCATED_BYTES_PER_TRANSFORMATION);
+    }
+
+    /**
+     * Stylesheet depending on the tenant of the request, with a parameter depending on the request itself. The
+     * stylesheet is made unique, so that it is not already compiled by another test.
+     */
+    private static XSLTTransformationPolicyConfiguration configuration() {
+        XSLTParameter id = new XSLTParameter();
+        id.setName("id");
+        id.setValue("{#request.id}");
+
+        XSLTTransformationPolicyConfiguration configuration = new XSLTTransformationPolicyConfiguration();
+        configuration.setParameters(Collections.singletonList(id));
+        configuration.setStylesheet(
+                "<xsl:stylesheet version=\"2.0\" xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\">" +
+                "<!-- " + UUID.randomUUID() + " --><xsl:output method=\"text\"/><xsl:param name=\"id\"/>" +
+                "<xsl:template match=\"/\"><xsl:value-of select=\"concat('{#tenant}', ':', $id, ':', order/@n)\"/>" +
+                "</xsl:template></xsl:stylesheet>");
+        return configuration;
+    }
+
+    private static String transform(XSLTTransformationPolicy policy, int request) {
+        ExecutionContext context = new RequestContext("tenant-" + (request % TENANTS), Integer.toString(request));
+        return policy.toXSLT(context).apply(Buffer.buffer("<order n=\"" + request + "\"/>")).toString();
+    }
+
+    /**
+     * Execution context of a single request, resolving <code>{#tenant}</code> in the stylesheet and
+     * <code>{#request.id}</code> in the parameters.
+     */
+    private static class RequestContext implements ExecutionContext, TemplateEngine {
+
+        private final String tenant;
+
+        private final String id;
+
+        private final Map<String, Object> attributes = new HashMap<>();
+
+        RequestContext(String tenant, String id) {
+            this.tenant = tenant;
+            this.id = id;
+        }
+
+        @Override
+        public String convert(String expression) {
+            return expression.replace("{#tenant}", tenant);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T getValue(String expression, Class<T> clazz) {
+            return "{#request.id}".equals(expression) ? (T) id : null;
+        }
+
+        @Override
+        public TemplateContext getTemplateContext() {
+            return null;
+        }
+
+        @Override
+        public TemplateEngine getTemplateEngine() {
+            return this;
+        }
+
+        @Override
+        public Request request() {
+            return null;
+        }
+
+        @Override
+        public Response response() {
+            return null;
+        }
+
+        @Override
+        public <T> T getComponent(Class<T> componentClass) {
+            return null;
+        }
+
+        @Override
+        public void setAttribute(String name, Object value) {
+            attributes.put(name, value);
+        }
+
+        @Override
+        public void removeAttribute(String name) {
+            attributes.remove(name);
+        }
+
+        @Override
+        public Object getAttribute(String name) {
+            return attributes.get(name);
+        }
+
+        @Override
+        public Enumeration<String> getAttributeNames() {
+            return Collections.enumeration(attributes.keySet());
+        }
+
+        @Override
+        public Map<String, Object> getAttributes() {
+            return attributes;
+        }
+    }
+}
@@ -15,26 +15,66 @@
  */
 package io.gravitee.policy.xslt;
 
+import io.gravitee.common.http.HttpHeaders;
+import io.gravitee.common.http.MediaType;
 import io.gravitee.el.TemplateContext;
 import io.gravitee.el.TemplateEngine;
 import io.gravitee.gateway.api.ExecutionContext;
+import io.gravitee.gateway.api.Request;
+import io.gravitee.gateway.api.Response;
 import io.gravitee.gateway.api.buffer.Buffer;
+import io.gravitee.gateway.api.stream.ReadWriteStream;
 import io.gravitee.gateway.api.stream.exception.TransformationException;
+import io.gravitee.policy.api.PolicyChain;
+import io.gravitee.policy.api.PolicyResult;
+import io.gravitee.policy.xslt.configuration.ConditionalStylesheet;
+import io.gravitee.policy.xslt.configuration.PolicyScope;
+import io.gravitee.policy.xslt.configuration.ReferenceDocument;
+import io.gravitee.policy.xslt.configuration.SourceParser;
+import io.gravitee.policy.xslt.configuration.XSLTParameter;
 import io.gravitee.policy.xslt.configuration.XSLTTransformationPolicyConfiguration;
+import io.gravitee.policy.xslt.metrics.TransformationErrors;
+import io.gravitee.policy.xslt.metrics.TransformationMetrics;
+import io.gravitee.policy.xslt.metrics.TransformationStats;
+import io.gravitee.policy.xslt.stream.BufferChunksInputStream;
+import io.gravitee.policy.xslt.transformer.TemplateCacheStats;
+import io.gravitee.policy.xslt.transformer.TransformerFactory;
+import io.vertx.core.Vertx;
+import net.sf.saxon.om.TreeModel;
 import org.apache.commons.io.IOUtils;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.xmlunit.builder.DiffBuilder;
 import org.xmlunit.diff.Diff;
 
+import javax.management.ObjectName;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atMost;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 
@@ -48,16 +88,26 @@ public class XSLTTransformationPolicyTest {
     @Mock
     private XSLTTransformationPolicyConfiguration xsltTransformationPolicyConfiguration;
 
-    private XSLTTransformationPolicy xsltTransformationPolicy;
-
     @Mock
     protected ExecutionContext executionContext;
 
+    @Mock
+    protected Response response;
+
+    @Mock
+    protected PolicyChain policyChain;
+
     @Before
     public void init() {
         initMocks(this);
+    }
 
-        xsltTransformationPolicy = new XSLTTransformationPolicy(xsltTransformationPolicyConfiguration);
+    /**
+     * The state derived from the configuration is shared by the policies created with it: the policy must only be
+     * created once the configuration is stubbed.
+     */
+    private XSLTTransformationPolicy xsltTransformationPolicy() {
+        return new XSLTTransformationPolicy(xsltTransformationPolicyConfiguration);
     }
 
     @Test
@@ -68,9 +118,8 @@ public class XSLTTransformationPolicyTest {
 
         // Prepare context
         when(xsltTransformationPolicyConfiguration.getStylesheet()).thenReturn(stylesheet);
-        when(executionContext.getTemplateEngine()).thenReturn(new MockTemplateEngine());
 
-        Buffer ret = xsltTransformationPolicy.toXSLT(executionContext).apply(Buffer.buffer(xml));
+        Buffer ret = xsltTransformationPolicy().toXSLT(executionContext).apply(Buffer.buffer(xml));
         Assert.assertNotNull(ret);
 
         Diff diff = DiffBuilder.compare(expected).ignoreWhitespace().withTest(ret.toString()).checkForIdentical().build();
@@ -79,14 +128,15 @@ public class XSLTTransformationPolicyTest {
 
     @Test(expected = TransformationException.class)
     public void shouldThrowExceptionForInvalidStylesheet() throws Exception {
-        String stylesheet = loadResource("/io/gravitee/policy/xslt/stylesheet_invalid.xsl");
+        // Expression language defers compilation to the request path
+        String stylesheet = loadResource("/io/gravitee/policy/xslt/stylesheet_invalid.xsl") + "<!-- {#request.id} -->";
         String xml = loadResource("/io/gravitee/policy/xslt/file01.xml");
 
         // Prepare context
         when(xsltTransformationPolicyConfiguration.getStylesheet()).thenReturn(stylesheet);
         when(executionContext.getTemplateEngine()).thenReturn(new MockTemplateEngine());
 
-        xsltTransformationPolicy.toXSLT(executionContext).apply(Buffer.buffer(xml));
+        xsltTransformationPolicy().toXSLT(executionContext).apply(Buffer.buffer(xml));
     }
 
     @Test(expected = TransformationException.class)
@@ -96,9 +146,837 @@ public class XSLTTransformationPolicyTest {
 
         // Prepare context
         when(xsltTransformationPolicyConfiguration.getStylesheet()).thenReturn(stylesheet);
+
+        xsltTransformationPolicy().toXSLT(executionContext).apply(Buffer.buffer(xml));
+    }
+
+    @Test
+    public void shouldConvertParameterToDeclaredType() throws Exception {
+        String stylesheet = loadResource("/io/gravitee/policy/xslt/stylesheet_param.xsl");
+        String xml = loadResource("/io/gravitee/policy/xslt/file01.xml");
+
+        XSLTParameter parameter = new XSLTParameter();
+        parameter.setName("count");
+        parameter.setValue("2");
+
+        // Prepare context
+        when(xsltTransformationPolicyConfiguration.getStylesheet()).thenReturn(stylesheet);
+        when(xsltTransformationPolicyConfiguration.getParameters()).thenReturn(Collections.singletonList(parameter));
+        Buffer ret = xsltTransformationPolicy().toXSLT(executionContext).apply(Buffer.buffer(xml));
+
+        Diff diff = DiffBuilder.compare("<result><title>Empire Burlesque</title><title>Hide your heart</title></result>")
+                .ignoreWhitespace().withTest(ret.toString()).checkForIdentical().build();
+        Assert.assertFalse("XML identical " + diff.toString(), diff.hasDifferences());
+    }
+
+    @Test
+    public void shouldEvaluateParameterExpressionWithoutMutatingConfiguration() throws Exception {
+        String stylesheet = loadResource("/io/gravitee/policy/xslt/stylesheet_param.xsl");
+        String xml = loadResource("/io/gravitee/policy/xslt/file01.xml");
+
+        XSLTParameter parameter = new XSLTParameter();
+        parameter.setName("count");
+        parameter.setValue("{#request.headers['count'][0]}");
+
+        // Prepare context
+        when(xsltTransformationPolicyConfiguration.getStylesheet()).thenReturn(stylesheet);
+        when(xsltTransformationPolicyConfiguration.getParameters()).thenReturn(Collections.singletonList(parameter));
+        when(executionContext.getTemplateEngine()).thenReturn(
+                new MockTemplateEngine(Collections.singletonMap("{#request.headers['count'][0]}", "1")));
+        Buffer ret = xsltTransformationPolicy().toXSLT(executionContext).apply(Buffer.buffer(xml));
+
+        Diff diff = DiffBuilder.compare("<result><title>Empire Burlesque</title></result>")
+                .ignoreWhitespace().withTest(ret.toString()).checkForIdentical().build();
+        Assert.assertFalse("XML identical " + diff.toString(), diff.hasDifferences());
+        Assert.assertEquals("{#request.headers['count'][0]}", parameter.getValue());
+    }
+
+    @Test
+    public void shouldTransformInputWithSaxonParser() throws Exception {
+        String stylesheet = loadResource("/io/gravitee/policy/xslt/stylesheet.xsl");
+        String xml = loadResource("/io/gravitee/policy/xslt/file01.xml");
+        String expected = loadResource("/io/gravitee/policy/xslt/output01.xml");
+
+        // Prepare context
+        when(xsltTransformationPolicyConfiguration.getStylesheet()).thenReturn(stylesheet);
+        when(xsltTransformationPolicyConfiguration.getSourceParser()).thenReturn(SourceParser.SAXON);
+
+        Buffer ret = xsltTransformationPolicy().toXSLT(executionContext).apply(Buffer.buffer(xml));
+
+        Diff diff = DiffBuilder.compare(expected).ignoreWhitespace().withTest(ret.toString()).checkForIdentical().build();
+        Assert.assertFalse("XML identical " + diff.toString(), diff.hasDifferences());
+    }
+
+    @Test(expected = TransformationException.class)
+    public void shouldThrowExceptionForExternalEntityInjectionWithSaxonParser() throws Exception {
+        String stylesheet = loadResource("/io/gravitee/policy/xslt/stylesheet.xsl");
+        String xml = loadResource("/io/gravitee/policy/xslt/file02.xml");
+
+        // Prepare context
+        when(xsltTransformationPolicyConfiguration.getStylesheet()).thenReturn(stylesheet);
+        when(xsltTransformationPolicyConfiguration.getSourceParser()).thenReturn(SourceParser.SAXON);
+
+        xsltTransformationPolicy().toXSLT(executionContext).apply(Buffer.buffer(xml));
+    }
+
+    @Test
+    public void shouldReuseParserAfterFailure() throws Exception {
+        String stylesheet = loadResource("/io/gravitee/policy/xslt/stylesheet.xsl");
+        String xml = loadResource("/io/gravitee/policy/xslt/file01.xml");
+        String expected = loadResource("/io/gravitee/policy/xslt/output01.xml");
+
+        // Prepare context
+        when(xsltTransformationPolicyConfiguration.getStylesheet()).thenReturn(stylesheet);
+
+        try {
+            xsltTransformationPolicy().toXSLT(executionContext).apply(Buffer.buffer(loadResource("/io/gravitee/policy/xslt/file02.xml")));
+            Assert.fail("External entity must be rejected");
+        } catch (TransformationException tex) {
+            // Expected
+        }
+
+        Buffer ret = xsltTransformationPolicy().toXSLT(executionContext).apply(Buffer.buffer(xml));
+
+        Diff diff = DiffBuilder.compare(expected).ignoreWhitespace().withTest(ret.toString()).checkForIdentical().build();
+        Assert.assertFalse("XML identical " + diff.toString(), diff.hasDifferences());
+    }
+
+    @Test
+    public void shouldPrecompileStylesheetWithoutExpression() throws Exception {
+        String stylesheet = loadResource("/io/gravitee/policy/xslt/stylesheet.xsl");
+        String xml = loadResource("/io/gravitee/policy/xslt/file01.xml");
+        String expected = loadResource("/io/gravitee/policy/xslt/output01.xml");
+
+        when(xsltTransformationPolicyConfiguration.getStylesheet()).thenReturn(stylesheet);
+        Buffer ret = xsltTransformationPolicy().toXSLT(executionContext).apply(Buffer.buffer(xml));
+
+        // Neither the stylesheet nor the parameters need the template engine
+        verify(executionContext, never()).getTemplateEngine();
+
+        Diff diff = DiffBuilder.compare(expected).ignoreWhitespace().withTest(ret.toString()).checkForIdentical().build();
+        Assert.assertFalse("XML identical " + diff.toString(), diff.hasDifferences());
+    }
+
+    @Test(expected = TransformationException.class)
+    public void shouldThrowExceptionAtConstructionForInvalidStylesheet() throws Exception {
+        String stylesheet = loadResource("/io/gravitee/policy/xslt/stylesheet_invalid.xsl");
+
+        when(xsltTransformationPolicyConfiguration.getStylesheet()).thenReturn(stylesheet);
+
+        new XSLTTransformationPolicy(xsltTransformationPolicyConfiguration);
+    }
+
+    @Test
+    public void shouldNotCompileInvalidStylesheetAgainForNextRequests() throws Exception {
+        String stylesheet = loadResource("/io/gravitee/policy/xslt/stylesheet_invalid.xsl") + "<!-- " + UUID.randomUUID() + " -->";
+
+        when(xsltTransformationPolicyConfiguration.getStylesheet()).thenReturn(stylesheet);
+
+        TemplateCacheStats stats = TransformerFactory.getInstance().getStats();
+        long compilations = stats.getCompilations();
+        TransformationException first = null;
+        for (int i = 0; i < 3; i++) {
+            try {
+                new XSLTTransformationPolicy(xsltTransformationPolicyConfiguration);
+                Assert.fail("Invalid stylesheet must fail");
+            } catch (TransformationException ex) {
+                if (first == null) {
+                    first = ex;
+                }
+                Assert.assertSame(first, ex);
+            }
+        }
+
+        Assert.assertEquals(compilations + 1, stats.getCompilations());
+    }
+
+    @Test
+    public void shouldShareStateBetweenPoliciesOfSameConfiguration() throws Exception {
+        String stylesheet = loadResource("/io/gravitee/policy/xslt/stylesheet.xsl");
+
+        when(xsltTransformationPolicyConfiguration.getStylesheet()).thenReturn(stylesheet);
+        new XSLTTransformationPolicy(xsltTransformationPolicyConfiguration);
+
+        TemplateCacheStats stats = TransformerFactory.getInstance().getStats();
+        long lookups = stats.getHits() + stats.getMisses();
+
+        // Next requests neither hash nor look the stylesheet up again
+        new XSLTTransformationPolicy(xsltTransformationPolicyConfiguration);
+        Assert.assertEquals(lookups, stats.getHits() + stats.getMisses());
+    }
+
+    @Test
+    public void shouldSerializeUsingStylesheetOutputEncoding() throws Exception {
+        String stylesheet = loadResource("/io/gravitee/policy/xslt/stylesheet_latin1.xsl");
+        String xml = loadResource("/io/gravitee/policy/xslt/file03.xml");
+
+        // Prepare context
+        HttpHeaders headers = new HttpHeaders();
+        when(xsltTransformationPolicyConfiguration.getScope()).thenReturn(PolicyScope.RESPONSE);
+        when(xsltTransformationPolicyConfiguration.getStylesheet()).thenReturn(stylesheet);
+        when(response.headers()).thenReturn(headers);
+
+        ReadWriteStream stream = xsltTransformationPolicy().onResponseContent(response, executionContext, policyChain);
+        Buffer ret = Buffer.buffer();
+        stream.bodyHandler(chunk -> ret.appendBuffer((Buffer) chunk));
+        stream.write(Buffer.buffer(xml));
+        stream.end();
+
+        Assert.assertEquals(MediaType.APPLICATION_XML + "; charset=ISO-8859-1", headers.getFirst(HttpHeaders.CONTENT_TYPE));
+        // UTF-8 encoded bytes would not decode properly as ISO-8859-1
+        Assert.assertTrue(ret.toString(StandardCharsets.ISO_8859_1).contains("<artist>Céline Dion</artist>"));
+    }
+
+    @Test
+    public void shouldTransformInputInStreamingMode() throws Exception {
+        String stylesheet = loadResource("/io/gravitee/policy/xslt/stylesheet.xsl");
+        String xml = loadResource("/io/gravitee/policy/xslt/file01.xml");
+        String expected = loadResource("/io/gravitee/policy/xslt/output01.xml");
+
+        // Prepare context
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.CONTENT_LENGTH, Integer.toString(xml.length()));
+        when(xsltTransformationPolicyConfiguration.getScope()).thenReturn(PolicyScope.RESPONSE);
+        when(xsltTransformationPolicyConfiguration.isStreaming()).thenReturn(true);
+        when(xsltTransformationPolicyConfiguration.getStylesheet()).thenReturn(stylesheet);
+        when(response.headers()).thenReturn(headers);
+
+        ReadWriteStream stream = xsltTransformationPolicy().onResponseContent(response, executionContext, policyChain);
+        Buffer ret = Buffer.buffer();
+        stream.bodyHandler(chunk -> ret.appendBuffer((Buffer) chunk));
+
+        int half = xml.length() / 2;
+        stream.write(Buffer.buffer(xml.substring(0, half)));
+        stream.write(Buffer.buffer(xml.substring(half)));
+        stream.end();
+
+        verify(policyChain, never()).streamFailWith(any());
+        Assert.assertEquals("chunked", headers.getFirst(HttpHeaders.TRANSFER_ENCODING));
+        Assert.assertNull(headers.getFirst(HttpHeaders.CONTENT_LENGTH));
+        Assert.assertEquals(MediaType.APPLICATION_XML + "; charset=UTF-8", headers.getFirst(HttpHeaders.CONTENT_TYPE));
+
+        Diff diff = DiffBuilder.compare(expected).ignoreWhitespace().withTest(ret.toString()).checkForIdentical().build();
+        Assert.assertFalse("XML identical " + diff.toString(), diff.hasDifferences());
+    }
+
+    @Test
+    public void shouldFailStreamForInvalidStylesheetInStreamingMode() throws Exception {
+        // Expression language defers compilation to the request path
+        String stylesheet = loadResource("/io/gravitee/policy/xslt/stylesheet_invalid.xsl") + "<!-- {#request.id} -->";
+        String xml = loadResource("/io/gravitee/policy/xslt/file01.xml");
+
+        // Prepare context
+        when(xsltTransformationPolicyConfiguration.getScope()).thenReturn(PolicyScope.RESPONSE);
+        when(xsltTransformationPolicyConfiguration.isStreaming()).thenReturn(true);
+        when(xsltTransformationPolicyConfiguration.getStylesheet()).thenReturn(stylesheet);
         when(executionContext.getTemplateEngine()).thenReturn(new MockTemplateEngine());
+        when(response.headers()).thenReturn(new HttpHeaders());
+
+        ReadWriteStream stream = xsltTransformationPolicy().onResponseContent(response, executionContext, policyChain);
+        stream.write(Buffer.buffer(xml));
+        stream.end();
+
+        verify(policyChain).streamFailWith(any());
+    }
+
+    @Test
+    public void shouldAbortStreamWhenTransformationFailsAfterEmittingInStreamingMode() throws Exception {
+        String xml = loadResource("/io/gravitee/policy/xslt/file01.xml");
+        // Emits several chunks before failing
+        String stylesheet = textStylesheet("<xsl:for-each select=\"1 to 10000\">line <xsl:value-of select=\".\"/>&#10;</xsl:for-each>" +
+                "<xsl:message terminate=\"yes\">Failure</xsl:message>");
+
+        // Prepare context
+        when(xsltTransformationPolicyConfiguration.getScope()).thenReturn(PolicyScope.RESPONSE);
+        when(xsltTransformationPolicyConfiguration.isStreaming()).thenReturn(true);
+        when(xsltTransformationPolicyConfiguration.getStylesheet()).thenReturn(stylesheet);
+        when(response.headers()).thenReturn(new HttpHeaders());
+
+        ReadWriteStream stream = xsltTransformationPolicy().onResponseContent(response, executionContext, policyChain);
+        Buffer ret = Buffer.buffer();
+        AtomicBoolean ended = new AtomicBoolean();
+        stream.bodyHandler(chunk -> ret.appendBuffer((Buffer) chunk));
+        stream.endHandler(result -> ended.set(true));
+
+        stream.write(Buffer.buffer(xml));
+        stream.end();
+
+        ArgumentCaptor<PolicyResult> result = ArgumentCaptor.forClass(PolicyResult.class);
+        verify(policyChain).streamFailWith(result.capture());
+        Assert.assertEquals(500, result.getValue().statusCode());
+        Assert.assertTrue(ret.length() > 0);
+        Assert.assertFalse("Stream must not be completed normally", ended.get());
+    }
+
+    @Test
+    public void shouldTransformInputOnWorkerThread() throws Exception {
+        String stylesheet = loadResource("/io/gravitee/policy/xslt/stylesheet.xsl");
+        String xml = loadResource("/io/gravitee/policy/xslt/file01.xml");
+        String expected = loadResource("/io/gravitee/policy/xslt/output01.xml");
+
+        // Prepare context
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.TRANSFER_ENCODING, "chunked");
+        when(xsltTransformationPolicyConfiguration.getScope()).thenReturn(PolicyScope.RESPONSE);
+        when(xsltTransformationPolicyConfiguration.getOffloadThreshold()).thenReturn(1);
+        when(xsltTransformationPolicyConfiguration.getOffloadTimeout()).thenReturn(10000L);
+        when(xsltTransformationPolicyConfiguration.getStylesheet()).thenReturn(stylesheet);
+        when(response.headers()).thenReturn(headers);
+
+        ReadWriteStream stream = xsltTransformationPolicy().onResponseContent(response, executionContext, policyChain);
+        Buffer ret = Buffer.buffer();
+        CountDownLatch ended = new CountDownLatch(1);
+        AtomicReference<String> thread = new AtomicReference<>();
+        stream.bodyHandler(chunk -> {
+            thread.set(Thread.currentThread().getName());
+            ret.appendBuffer((Buffer) chunk);
+        });
+        stream.endHandler(result -> ended.countDown());
+
+        stream.write(Buffer.buffer(xml));
+        stream.end();
+
+        Assert.assertTrue(ended.await(10, TimeUnit.SECONDS));
+        verify(policyChain, never()).streamFailWith(any());
+        Assert.assertTrue(thread.get().startsWith("gio-xslt-worker-"));
+        Assert.assertNull(headers.getFirst(HttpHeaders.TRANSFER_ENCODING));
+        Assert.assertEquals(Integer.toString(ret.length()), headers.getFirst(HttpHeaders.CONTENT_LENGTH));
+
+        Diff diff = DiffBuilder.compare(expected).ignoreWhitespace().withTest(ret.toString()).checkForIdentical().build();
+        Assert.assertFalse("XML identical " + diff.toString(), diff.hasDifferences());
+    }
+
+    @Test
+    public void shouldWriteDownstreamOnEventLoopAfterTransformingOnWorkerThread() throws Exception {
+        String stylesheet = loadResource("/io/gravitee/policy/xslt/stylesheet.xsl");
+        String xml = loadResource("/io/gravitee/policy/xslt/file01.xml");
+
+        // Prepare context
+        when(xsltTransformationPolicyConfiguration.getScope()).thenReturn(PolicyScope.RESPONSE);
+        when(xsltTransformationPolicyConfiguration.getOffloadThreshold()).thenReturn(1);
+        when(xsltTransformationPolicyConfiguration.getStylesheet()).thenReturn(stylesheet);
+        when(response.headers()).thenReturn(new HttpHeaders());
+
+        Vertx vertx = Vertx.vertx();
+        try {
+            ReadWriteStream stream = xsltTransformationPolicy().onResponseContent(response, executionContext, policyChain);
+            CountDownLatch ended = new CountDownLatch(1);
+            AtomicReference<String> bodyThread = new AtomicReference<>();
+            AtomicReference<String> endThread = new AtomicReference<>();
+            stream.bodyHandler(chunk -> bodyThread.set(Thread.currentThread().getName()));
+            stream.endHandler(result -> {
+                endThread.set(Thread.currentThread().getName());
+                ended.countDown();
+            });
+
+            vertx.getOrCreateContext().runOnContext(ignored -> {
+                stream.write(Buffer.buffer(xml));
+                stream.end();
+            });
 
-        xsltTransformationPolicy.toXSLT(executionContext).apply(Buffer.buffer(xml));
+            Assert.assertTrue(ended.await(10, TimeUnit.SECONDS));
+            verify(policyChain, never()).streamFailWith(any());
+            Assert.assertTrue(bodyThread.get(), bodyThread.get().startsWith("vert.x-eventloop-thread-"));
+            Assert.assertTrue(endThread.get(), endThread.get().startsWith("vert.x-eventloop-thread-"));
+        } finally {
+            vertx.close();
+        }
+    }
+
+    @Test
+    public void shouldPublishTransformationMetrics() throws Exception {
+        String stylesheet = loadResource("/io/gravitee/policy/xslt/stylesheet.xsl");
+        String xml = loadResource("/io/gravitee/policy/xslt/file01.xml");
+
+        // Prepare context
+        when(xsltTransformationPolicyConfiguration.getStylesheet()).thenReturn(stylesheet);
+
+        Buffer ret = xsltTransformationPolicy().toXSLT(executionContext).apply(Buffer.buffer(xml));
+
+        verify(executionContext).setAttribute(TransformationMetrics.ATTR_STYLESHEET, TransformerFactory.key(stylesheet));
+        verify(executionContext).setAttribute(TransformationMetrics.ATTR_BYTES_IN, (long) Buffer.buffer(xml).length());
+        verify(executionContext).setAttribute(TransformationMetrics.ATTR_BYTES_OUT, (long) ret.length());
+        for (TransformationMetrics.Phase phase : TransformationMetrics.Phase.values()) {
+            verify(executionContext).setAttribute(eq(phase.attribute()), any(Long.class));
+        }
+        verify(executionContext, never()).setAttribute(eq(TransformationMetrics.ATTR_ERROR), any());
+
+        // Counters shared by all the APIs are only exposed through JMX
+        verify(executionContext, times(8)).setAttribute(any(), any());
+        Assert.assertEquals(TransformerFactory.getInstance().getStats().getHits(),
+                ManagementFactory.getPlatformMBeanServer().getAttribute(
+                        new ObjectName(TransformationStats.OBJECT_NAME), "CacheHits"));
+        Assert.assertEquals(TransformationErrors.get(TransformationErrors.Cause.PARSE),
+                ManagementFactory.getPlatformMBeanServer().getAttribute(
+                        new ObjectName(TransformationStats.OBJECT_NAME), "ParseErrors"));
+    }
+
+    @Test
+    public void shouldCountParseErrors() throws Exception {
+        String stylesheet = loadResource("/io/gravitee/policy/xslt/stylesheet.xsl");
+
+        // Prepare context
+        when(xsltTransformationPolicyConfiguration.getStylesheet()).thenReturn(stylesheet);
+
+        long errors = TransformationErrors.get(TransformationErrors.Cause.PARSE);
+        try {
+            xsltTransformationPolicy().toXSLT(executionContext).apply(Buffer.buffer("<root><unclosed></root>"));
+            Assert.fail("Transformation of a malformed document must fail");
+        } catch (TransformationException te) {
+            verify(executionContext).setAttribute(TransformationMetrics.ATTR_ERROR, TransformationErrors.Cause.PARSE.name());
+            Assert.assertEquals(errors + 1, TransformationErrors.get(TransformationErrors.Cause.PARSE));
+        }
+    }
+
+    @Test
+    public void shouldNotTransformResponseWithOtherContentType() throws Exception {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON);
+        when(xsltTransformationPolicyConfiguration.getScope()).thenReturn(PolicyScope.RESPONSE);
+        when(xsltTransformationPolicyConfiguration.getContentTypes()).thenReturn(Collections.singletonList(MediaType.APPLICATION_XML));
+        when(response.headers()).thenReturn(headers);
+
+        ReadWriteStream stream = new XSLTTransformationPolicy(xsltTransformationPolicyConfiguration)
+                .onResponseContent(response, executionContext, policyChain);
+
+        Assert.assertNull(stream);
+    }
+
+    @Test
+    public void shouldPassThroughNonXmlBody() throws Exception {
+        String stylesheet = loadResource("/io/gravitee/policy/xslt/stylesheet.xsl");
+        String json = "{\"error\": \"Service unavailable\"}";
+
+        when(xsltTransformationPolicyConfiguration.getStylesheet()).thenReturn(stylesheet);
+        when(xsltTransformationPolicyConfiguration.isSkipNonXmlBody()).thenReturn(true);
+
+        Buffer input = Buffer.buffer(json);
+        Buffer ret = new XSLTTransformationPolicy(xsltTransformationPolicyConfiguration).toXSLT(executionContext).apply(input);
+
+        Assert.assertSame(input, ret);
+        verify(executionContext, never()).getTemplateEngine();
+    }
+
+    @Test
+    public void shouldPassThroughNonXmlBodyInStreamingMode() throws Exception {
+        String stylesheet = loadResource("/io/gravitee/policy/xslt/stylesheet.xsl");
+        String json = "{\"error\": \"Service unavailable\"}";
+
+        when(xsltTransformationPolicyConfiguration.getScope()).thenReturn(PolicyScope.RESPONSE);
+        when(xsltTransformationPolicyConfiguration.isStreaming()).thenReturn(true);
+        when(xsltTransformationPolicyConfiguration.getStylesheet()).thenReturn(stylesheet);
+        when(xsltTransformationPolicyConfiguration.isSkipNonXmlBody()).thenReturn(true);
+        when(response.headers()).thenReturn(new HttpHeaders());
+
+        ReadWriteStream stream = new XSLTTransformationPolicy(xsltTransformationPolicyConfiguration)
+                .onResponseContent(response, executionContext, policyChain);
+        Buffer ret = Buffer.buffer();
+        stream.bodyHandler(chunk -> ret.appendBuffer((Buffer) chunk));
+        stream.write(Buffer.buffer(json));
+        stream.end();
+
+        verify(policyChain, never()).streamFailWith(any());
+        Assert.assertEquals(json, ret.toString());
+    }
+
+    @Test
+    public void shouldSelectStylesheetFromRootElement() throws Exception {
+        XSLTTransformationPolicyConfiguration configuration = new XSLTTransformationPolicyConfiguration();
+        configuration.setStylesheets(Arrays.asList(
+                conditional(null, null, "{urn:orders}order", textStylesheet("order")),
+                conditional(null, null, "invoice", textStylesheet("invoice"))));
+
+        XSLTTransformationPolicy policy = new XSLTTransformationPolicy(configuration);
+
+        Assert.assertEquals("order", policy.toXSLT(executionContext)
+                .apply(Buffer.buffer("<o:order xmlns:o=\"urn:orders\"/>")).toString());
+        Assert.assertEquals("invoice", policy.toXSLT(executionContext)
+                .apply(Buffer.buffer("<invoice xmlns=\"urn:invoices\"/>")).toString());
+        Assert.assertEquals("<other/>", policy.toXSLT(executionContext)
+                .apply(Buffer.buffer("<other/>")).toString());
+    }
+
+    @Test
+    public void shouldPassOriginalContentThroughWhenNoRootElementMatches() throws Exception {
+        XSLTTransformationPolicyConfiguration configuration = new XSLTTransformationPolicyConfiguration();
+        configuration.setStylesheets(Collections.singletonList(
+                conditional(null, null, "order", textStylesheet("order"))));
+
+        Buffer input = Buffer.buffer("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>\n<!DOCTYPE other>\n<other>\u00e9</other>"
+                .getBytes(StandardCharsets.ISO_8859_1));
+
+        Assert.assertSame(input, new XSLTTransformationPolicy(configuration).toXSLT(executionContext).apply(input));
+    }
+
+    @Test
+    public void shouldPassOriginalContentThroughWhenNoRootElementMatchesInStreamingMode() throws Exception {
+        XSLTTransformationPolicyConfiguration configuration = new XSLTTransformationPolicyConfiguration();
+        configuration.setScope(PolicyScope.RESPONSE);
+        configuration.setStreaming(true);
+        configuration.setStylesheets(Collections.singletonList(
+                conditional(null, null, "order", textStylesheet("order"))));
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.CONTENT_TYPE, "application/xml; charset=ISO-8859-1");
+        when(response.headers()).thenReturn(headers);
+
+        byte[] xml = "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>\n<!DOCTYPE other>\n<other>\u00e9</other>"
+                .getBytes(StandardCharsets.ISO_8859_1);
+        ReadWriteStream stream = new XSLTTransformationPolicy(configuration)
+                .onResponseContent(response, executionContext, policyChain);
+        Buffer ret = Buffer.buffer();
+        stream.bodyHandler(chunk -> ret.appendBuffer((Buffer) chunk));
+        stream.write(Buffer.buffer(Arrays.copyOfRange(xml, 0, 10)));
+        stream.write(Buffer.buffer(Arrays.copyOfRange(xml, 10, xml.length)));
+        stream.end();
+
+        verify(policyChain, never()).streamFailWith(any());
+        Assert.assertArrayEquals(xml, ret.getBytes());
+        Assert.assertEquals("application/xml; charset=ISO-8859-1", headers.getFirst(HttpHeaders.CONTENT_TYPE));
+    }
+
+    @Test
+    public void shouldSelectStylesheetFromSoapActionAndCondition() throws Exception {
+        XSLTTransformationPolicyConfiguration configuration = new XSLTTransformationPolicyConfiguration();
+        configuration.setStylesheet(textStylesheet("default"));
+        configuration.setStylesheets(Arrays.asList(
+                conditional(null, "urn:getOrder", null, textStylesheet("getOrder")),
+                conditional("{#request.headers['v2'] != null}", null, null, textStylesheet("v2"))));
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("SOAPAction", "\"urn:getOrder\"");
+        Request request = mock(Request.class);
+        when(request.headers()).thenReturn(headers);
+        when(executionContext.request()).thenReturn(request);
+        when(executionContext.getTemplateEngine()).thenReturn(
+                new MockTemplateEngine(Collections.singletonMap("{#request.headers['v2'] != null}", Boolean.TRUE)));
+
+        XSLTTransformationPolicy policy = new XSLTTransformationPolicy(configuration);
+        Assert.assertEquals("getOrder", policy.toXSLT(executionContext).apply(Buffer.buffer("<order/>")).toString());
+
+        headers.remove("SOAPAction");
+        Assert.assertEquals("v2", policy.toXSLT(executionContext).apply(Buffer.buffer("<order/>")).toString());
+    }
+
+    @Test
+    public void shouldPassThroughWhenNoStylesheetMatches() throws Exception {
+        XSLTTransformationPolicyConfiguration configuration = new XSLTTransformationPolicyConfiguration();
+        configuration.setStylesheets(Collections.singletonList(
+                conditional(null, "urn:getOrder", null, textStylesheet("getOrder"))));
+
+        Request request = mock(Request.class);
+        when(request.headers()).thenReturn(new HttpHeaders());
+        when(executionContext.request()).thenReturn(request);
+
+        String xml = "<order>  <id>1</id></order>";
+        Assert.assertEquals(xml, new XSLTTransformationPolicy(configuration).toXSLT(executionContext)
+                .apply(Buffer.buffer(xml)).toString());
+    }
+
+    @Test
+    public void shouldApplyPipelineStagesInOrder() throws Exception {
+        XSLTTransformationPolicyConfiguration configuration = new XSLTTransformationPolicyConfiguration();
+        configuration.setStylesheet(wrapStylesheet("a"));
+        configuration.setPipeline(Arrays.asList(wrapStylesheet("b"),
+                "<xsl:stylesheet version=\"2.0\" xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\">" +
+                "<xsl:output method=\"text\"/><xsl:template match=\"/\">" +
+                "<xsl:value-of select=\"string-join(descendant::*/name(), '/')\"/></xsl:template></xsl:stylesheet>"));
+
+        Assert.assertEquals("b/a/order", new XSLTTransformationPolicy(configuration).toXSLT(executionContext)
+                .apply(Buffer.buffer("<order/>")).toString());
+    }
+
+    @Test
+    public void shouldSerializeJsonResult() throws Exception {
+        XSLTTransformationPolicyConfiguration configuration = new XSLTTransformationPolicyConfiguration();
+        configuration.setStylesheet(wrapStylesheet("a"));
+        configuration.setPipeline(Collections.singletonList(
+                "<xsl:stylesheet version=\"3.0\" xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\">" +
+                "<xsl:output method=\"json\"/><xsl:template match=\"/\">" +
+                "<xsl:sequence select=\"map{'id': number(a/order/id), 'lines': array{a/order/line/string()}}\"/>" +
+                "</xsl:template></xsl:stylesheet>"));
+
+        Assert.assertEquals("{\"id\":1,\"lines\":[\"x\",\"y\"]}", new XSLTTransformationPolicy(configuration)
+                .toXSLT(executionContext)
+                .apply(Buffer.buffer("<order><id>1</id><line>x</line><line>y</line></order>")).toString());
+    }
+
+    @Test
+    public void shouldRejectRequestExceedingMaxDepth() throws Exception {
+        XSLTTransformationPolicyConfiguration configuration = new XSLTTransformationPolicyConfiguration();
+        configuration.setScope(PolicyScope.REQUEST);
+        configuration.setStylesheet(textStylesheet("ok"));
+        configuration.setMaxDepth(2);
+
+        Assert.assertEquals(400, failedStatus(configuration, "<a><b><c/></b></a>", true));
+        Assert.assertEquals(-1, failedStatus(configuration, "<a><b/><b/></a>", true));
+    }
+
+    @Test
+    public void shouldRejectRequestExceedingMaxSize() throws Exception {
+        XSLTTransformationPolicyConfiguration configuration = new XSLTTransformationPolicyConfiguration();
+        configuration.setScope(PolicyScope.REQUEST);
+        configuration.setStreaming(true);
+        configuration.setStylesheet(textStylesheet("ok"));
+        configuration.setMaxSize(16);
+
+        Assert.assertEquals(413, failedStatus(configuration, "<order><id>1</id></order>", true));
+        Assert.assertEquals(-1, failedStatus(configuration, "<order/>", true));
+    }
+
+    @Test
+    public void shouldRejectRequestAsSoonAsItExceedsMaxSize() throws Exception {
+        for (boolean streaming : new boolean[] { false, true }) {
+            XSLTTransformationPolicyConfiguration configuration = new XSLTTransformationPolicyConfiguration();
+            configuration.setScope(PolicyScope.REQUEST);
+            configuration.setStreaming(streaming);
+            configuration.setStylesheet(textStylesheet("ok"));
+            configuration.setMaxSize(16);
+
+            PolicyChain chain = mock(PolicyChain.class);
+            Request request = mock(Request.class);
+            when(request.headers()).thenReturn(new HttpHeaders());
+            ReadWriteStream stream = new XSLTTransformationPolicy(configuration).onRequestContent(request, executionContext, chain);
+
+            stream.write(Buffer.buffer("<order>"));
+            verify(chain, never()).streamFailWith(any());
+
+            // Failed before the end of the body, which is then discarded
+            stream.write(Buffer.buffer("<id>1</id></order>"));
+            ArgumentCaptor<PolicyResult> result = ArgumentCaptor.forClass(PolicyResult.class);
+            verify(chain).streamFailWith(result.capture());
+            Assert.assertEquals(413, result.getValue().statusCode());
+
+            stream.write(Buffer.buffer("<more/>"));
+            stream.end();
+            verify(chain).streamFailWith(any());
+        }
+    }
+
+    @Test
+    public void shouldRejectRequestDeclaringContentLengthAboveMaxSize() throws Exception {
+        for (boolean streaming : new boolean[] { false, true }) {
+            XSLTTransformationPolicyConfiguration configuration = new XSLTTransformationPolicyConfiguration();
+            configuration.setScope(PolicyScope.REQUEST);
+            configuration.setStreaming(streaming);
+            configuration.setStylesheet(textStylesheet("ok"));
+            configuration.setMaxSize(16);
+
+            HttpHeaders headers = new HttpHeaders();
+            headers.set(HttpHeaders.CONTENT_LENGTH, "1048576");
+            PolicyChain chain = mock(PolicyChain.class);
+            Request request = mock(Request.class);
+            when(request.headers()).thenReturn(headers);
+            ReadWriteStream stream = new XSLTTransformationPolicy(configuration).onRequestContent(request, executionContext, chain);
+
+            stream.write(Buffer.buffer("<a/>"));
+
+            ArgumentCaptor<PolicyResult> result = ArgumentCaptor.forClass(PolicyResult.class);
+            verify(chain).streamFailWith(result.capture());
+            Assert.assertEquals(413, result.getValue().statusCode());
+        }
+    }
+
+    @Test
+    public void shouldReplaceResponseExceedingMaxNodes() throws Exception {
+        XSLTTransformationPolicyConfiguration configuration = new XSLTTransformationPolicyConfiguration();
+        configuration.setSourceParser(SourceParser.SAXON);
+        configuration.setStylesheet(textStylesheet("ok"));
+        configuration.setMaxNodes(3);
+
+        Assert.assertEquals(502, failedStatus(configuration, "<a b=\"1\"><c/>text</a>", false));
+        Assert.assertEquals(-1, failedStatus(configuration, "<a b=\"1\"><c/></a>", false));
+    }
+
+    @Test
+    public void shouldServeSameReferenceDocumentToEachTransformation() throws Exception {
+        ReferenceDocument codes = new ReferenceDocument();
+        codes.setName("codes.xml");
+        codes.setContent("<codes><code id=\"FR\">France</code><code id=\"DE\">Germany</code></codes>");
+
+        XSLTTransformationPolicyConfiguration configuration = new XSLTTransformationPolicyConfiguration();
+        configuration.setDocuments(Collections.singletonList(codes));
+        configuration.setStylesheet(
+                "<xsl:stylesheet version=\"2.0\" xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\">" +
+                "<xsl:output method=\"text\"/><xsl:key name=\"code\" match=\"code\" use=\"@id\"/>" +
+                "<xsl:template match=\"/\"><xsl:value-of select=\"key('code', country, document('codes.xml')), " +
+                "generate-id(document('codes.xml'))\"/></xsl:template></xsl:stylesheet>");
+
+        // A policy is created for each request
+        String france = new XSLTTransformationPolicy(configuration).toXSLT(executionContext)
+                .apply(Buffer.buffer("<country>FR</country>")).toString();
+        String germany = new XSLTTransformationPolicy(configuration).toXSLT(executionContext)
+                .apply(Buffer.buffer("<country>DE</country>")).toString();
+
+        Assert.assertTrue(france.startsWith("France "));
+        Assert.assertTrue(germany.startsWith("Germany "));
+        // Both requests were given the same tree
+        Assert.assertEquals(france.substring("France ".length()), germany.substring("Germany ".length()));
+    }
+
+    @Test
+    public void shouldTransformInputIntoCondensedTree() throws Exception {
+        String stylesheet = loadResource("/io/gravitee/policy/xslt/stylesheet.xsl");
+        String xml = loadResource("/io/gravitee/policy/xslt/file01.xml");
+        String expected = loadResource("/io/gravitee/policy/xslt/output01.xml");
+
+        // Prepare context
+        when(xsltTransformationPolicyConfiguration.getStylesheet()).thenReturn(stylesheet);
+        when(xsltTransformationPolicyConfiguration.getCondensedTreeThreshold()).thenReturn(1L);
+
+        Buffer ret = xsltTransformationPolicy().toXSLT(executionContext).apply(Buffer.buffer(xml));
+
+        Diff diff = DiffBuilder.compare(expected).ignoreWhitespace().withTest(ret.toString()).checkForIdentical().build();
+        Assert.assertFalse("XML identical " + diff.toString(), diff.hasDifferences());
+    }
+
+    @Test
+    public void shouldSelectTreeModelFromBodySize() throws Exception {
+        XSLTTransformationPolicyConfiguration configuration = new XSLTTransformationPolicyConfiguration();
+        configuration.setCondensedTreeThreshold(10);
+        XSLTTransformationPolicy policy = new XSLTTransformationPolicy(configuration);
+
+        Assert.assertEquals(TreeModel.TINY_TREE, policy.treeModel(new BufferChunksInputStream(
+                new ArrayList<>(Arrays.asList(Buffer.buffer("<a>"), Buffer.buffer("</a>"))))));
+        Assert.assertEquals(TreeModel.TINY_TREE_CONDENSED, policy.treeModel(new BufferChunksInputStream(
+                new ArrayList<>(Arrays.asList(Buffer.buffer("<a>"), Buffer.buffer("text"), Buffer.buffer("</a>"))))));
+
+        configuration.setCondensedTreeThreshold(0);
+        Assert.assertEquals(TreeModel.TINY_TREE, new XSLTTransformationPolicy(configuration)
+                .treeModel(new BufferChunksInputStream(Collections.singletonList(Buffer.buffer("<a>text</a>")))));
+    }
+
+    @Test
+    public void shouldWarmUpStylesheetOnce() throws Exception {
+        String stylesheet = "<xsl:stylesheet version=\"2.0\" xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\">" +
+                "<!-- " + UUID.randomUUID() + " --><xsl:output method=\"text\"/>" +
+                "<xsl:template match=\"/\"><xsl:value-of select=\"local-name(*)\"/></xsl:template></xsl:stylesheet>";
+        XSLTTransformationPolicyConfiguration configuration = new XSLTTransformationPolicyConfiguration();
+        configuration.setStylesheet(stylesheet);
+        configuration.setRootElements(Collections.singletonList("{urn:orders}order"));
+        configuration.setWarmupIterations(10);
+
+        TransformerFactory factory = TransformerFactory.getInstance();
+        long warmups = factory.getStats().getWarmups();
+
+        XSLTTransformationPolicy policy = new XSLTTransformationPolicy(configuration);
+        new XSLTTransformationPolicy(configuration);
+
+        awaitWarmups(warmups + 1);
+
+        Assert.assertEquals(warmups + 1, factory.getStats().getWarmups());
+        Assert.assertTrue(factory.getTemplate(stylesheet).isWarmedUp());
+        Assert.assertEquals("order", policy.toXSLT(executionContext)
+                .apply(Buffer.buffer("<order xmlns=\"urn:orders\"/>")).toString());
+    }
+
+    @Test
+    public void shouldWarmUpWithConstantParametersAndReferenceDocuments() throws Exception {
+        ReferenceDocument codes = new ReferenceDocument();
+        codes.setName("codes.xml");
+        codes.setContent("<codes><code id=\"FR\">France</code></codes>");
+        XSLTParameter id = new XSLTParameter();
+        id.setName("id");
+        id.setValue("FR");
+
+        String stylesheet = "<xsl:stylesheet version=\"2.0\" xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\">" +
+                "<!-- " + UUID.randomUUID() + " --><xsl:output method=\"text\"/><xsl:param name=\"id\" required=\"yes\"/>" +
+                "<xsl:key name=\"code\" match=\"code\" use=\"@id\"/><xsl:template match=\"/\">" +
+                "<xsl:value-of select=\"key('code', $id, document('codes.xml'))\"/></xsl:template></xsl:stylesheet>";
+        XSLTTransformationPolicyConfiguration configuration = new XSLTTransformationPolicyConfiguration();
+        configuration.setStylesheet(stylesheet);
+        configuration.setParameters(Collections.singletonList(id));
+        configuration.setDocuments(Collections.singletonList(codes));
+        configuration.setWarmupIterations(10);
+
+        long warmups = TransformerFactory.getInstance().getStats().getWarmups();
+        XSLTTransformationPolicy policy = new XSLTTransformationPolicy(configuration);
+
+        awaitWarmups(warmups + 1);
+        Assert.assertEquals(warmups + 1, TransformerFactory.getInstance().getStats().getWarmups());
+        Assert.assertEquals("France", policy.toXSLT(executionContext).apply(Buffer.buffer("<order/>")).toString());
+    }
+
+    @Test
+    public void shouldCreatePolicyWhenWarmUpFails() throws Exception {
+        String stylesheet = "<xsl:stylesheet version=\"2.0\" xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\">" +
+                "<!-- " + UUID.randomUUID() + " --><xsl:output method=\"text\"/><xsl:param name=\"id\" required=\"yes\"/>" +
+                "<xsl:template match=\"/\"><xsl:value-of select=\"$id\"/></xsl:template></xsl:stylesheet>";
+        XSLTTransformationPolicyConfiguration configuration = new XSLTTransformationPolicyConfiguration();
+        configuration.setStylesheet(stylesheet);
+        // Only known once a request is received
+        XSLTParameter id = new XSLTParameter();
+        id.setName("id");
+        id.setValue("{#request.id}");
+        configuration.setParameters(Collections.singletonList(id));
+        configuration.setWarmupIterations(10);
+        when(executionContext.getTemplateEngine()).thenReturn(
+                new MockTemplateEngine(Collections.singletonMap("{#request.id}", "1")));
+
+        XSLTTransformationPolicy policy = new XSLTTransformationPolicy(configuration);
+
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (!TransformerFactory.getInstance().getTemplate(stylesheet).isWarmedUp()
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals("1", policy.toXSLT(executionContext).apply(Buffer.buffer("<order/>")).toString());
+    }
+
+    /**
+     * Stylesheets are warmed up in background, on the warm-up thread.
+     */
+    private static void awaitWarmups(long expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (TransformerFactory.getInstance().getStats().getWarmups() < expected
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * @return the status of the failure sent in place of the transformed content, or -1 if it was transformed.
+     */
+    private int failedStatus(XSLTTransformationPolicyConfiguration configuration, String xml, boolean requestScope) {
+        PolicyChain chain = mock(PolicyChain.class);
+        XSLTTransformationPolicy policy = new XSLTTransformationPolicy(configuration);
+        ReadWriteStream stream;
+        if (requestScope) {
+            Request request = mock(Request.class);
+            when(request.headers()).thenReturn(new HttpHeaders());
+            stream = policy.onRequestContent(request, executionContext, chain);
+        } else {
+            Response response = mock(Response.class);
+            when(response.headers()).thenReturn(new HttpHeaders());
+            stream = policy.onResponseContent(response, executionContext, chain);
+        }
+
+        stream.write(Buffer.buffer(xml));
+        stream.end();
+
+        ArgumentCaptor<PolicyResult> result = ArgumentCaptor.forClass(PolicyResult.class);
+        verify(chain, atMost(1)).streamFailWith(result.capture());
+        return result.getAllValues().isEmpty() ? -1 : result.getValue().statusCode();
+    }
+
+    private static String wrapStylesheet(String element) {
+        return "<xsl:stylesheet version=\"2.0\" xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\">" +
+                "<xsl:template match=\"/\"><" + element + "><xsl:copy-of select=\"*\"/></" + element + ">" +
+                "</xsl:template></xsl:stylesheet>";
+    }
+
+    private static ConditionalStylesheet conditional(String condition, String soapAction, String rootElement, String stylesheet) {
+        ConditionalStylesheet conditional = new ConditionalStylesheet();
+        conditional.setCondition(condition);
+        conditional.setSoapAction(soapAction);
+        conditional.setRootElement(rootElement);
+        conditional.setStylesheet(stylesheet);
+        return conditional;
+    }
+
+    private static String textStylesheet(String text) {
+        return "<xsl:stylesheet version=\"2.0\" xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\">" +
+                "<xsl:output method=\"text\"/><xsl:template match=\"/\">" + text + "</xsl:template></xsl:stylesheet>";
     }
 
     private String loadResource(String resource) throws IOException {
@@ -110,14 +988,25 @@ public class XSLTTransformationPolicyTest {
 
     private class MockTemplateEngine implements TemplateEngine {
 
+        private final Map<String, ?> values;
+
+        MockTemplateEngine() {
+            this(Collections.emptyMap());
+        }
+
+        MockTemplateEngine(Map<String, ?> values) {
+            this.values = values;
+        }
+
         @Override
         public String convert(String s) {
             return s;
         }
 
         @Override
+        @SuppressWarnings("unchecked")
         public <T> T getValue(String expression, Class<T> clazz) {
-            return null;
+            return (T) values.get(expression);
         }
 
         @Override
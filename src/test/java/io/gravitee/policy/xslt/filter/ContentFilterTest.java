@@ -0,0 +1,110 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xslt.filter;
+
+import io.gravitee.common.http.HttpHeaders;
+import io.gravitee.policy.xslt.configuration.XSLTTransformationPolicyConfiguration;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * @author GraviteeSource Team
+ */
+public class ContentFilterTest {
+
+    @Test
+    public void shouldAcceptEverythingByDefault() {
+        ContentFilter filter = ContentFilter.of(new XSLTTransformationPolicyConfiguration());
+
+        Assert.assertTrue(filter.acceptsStatus(500));
+        Assert.assertTrue(filter.acceptsHeaders(headers("application/json")));
+        Assert.assertFalse(filter.inspectsBody());
+    }
+
+    @Test
+    public void shouldNeverAcceptResponsesWithoutContent() {
+        ContentFilter filter = ContentFilter.of(new XSLTTransformationPolicyConfiguration());
+
+        Assert.assertFalse(filter.acceptsStatus(204));
+        Assert.assertFalse(filter.acceptsStatus(304));
+    }
+
+    @Test
+    public void shouldMatchContentTypes() {
+        XSLTTransformationPolicyConfiguration configuration = new XSLTTransformationPolicyConfiguration();
+        configuration.setContentTypes(Arrays.asList("text/xml", "application/*+xml"));
+        ContentFilter filter = ContentFilter.of(configuration);
+
+        Assert.assertTrue(filter.acceptsHeaders(headers("text/xml; charset=UTF-8")));
+        Assert.assertTrue(filter.acceptsHeaders(headers("application/soap+xml")));
+        Assert.assertTrue(filter.acceptsHeaders(new HttpHeaders()));
+        Assert.assertFalse(filter.acceptsHeaders(headers("application/json")));
+    }
+
+    @Test
+    public void shouldSkipConfiguredStatusCodes() {
+        XSLTTransformationPolicyConfiguration configuration = new XSLTTransformationPolicyConfiguration();
+        configuration.setSkipStatusCodes(Collections.singletonList(502));
+        ContentFilter filter = ContentFilter.of(configuration);
+
+        Assert.assertTrue(filter.acceptsStatus(200));
+        Assert.assertFalse(filter.acceptsStatus(502));
+    }
+
+    @Test
+    public void shouldSkipEmptyAndNonXmlBodies() {
+        XSLTTransformationPolicyConfiguration configuration = new XSLTTransformationPolicyConfiguration();
+        configuration.setSkipEmptyBody(true);
+        configuration.setSkipNonXmlBody(true);
+        ContentFilter filter = ContentFilter.of(configuration);
+
+        Assert.assertFalse(accepts(filter, ""));
+        Assert.assertFalse(accepts(filter, "{\"error\": \"not found\"}"));
+        Assert.assertTrue(accepts(filter, "\uFEFF<?xml version=\"1.0\"?>\n<!-- comment --><root/>"));
+        // Undetermined
+        Assert.assertTrue(accepts(filter, "   "));
+    }
+
+    @Test
+    public void shouldMatchRootElements() {
+        XSLTTransformationPolicyConfiguration configuration = new XSLTTransformationPolicyConfiguration();
+        configuration.setRootElements(Arrays.asList("{http://schemas.xmlsoap.org/soap/envelope/}Envelope", "order"));
+        ContentFilter filter = ContentFilter.of(configuration);
+
+        Assert.assertTrue(accepts(filter,
+                "<?xml version=\"1.0\"?><!DOCTYPE env [<!ENTITY e \"v\">]>" +
+                "<soapenv:Envelope xmlns:soapenv='http://schemas.xmlsoap.org/soap/envelope/'><soapenv:Body/></soapenv:Envelope>"));
+        Assert.assertTrue(accepts(filter, "<ns:order xmlns:ns=\"urn:orders\"/>"));
+        Assert.assertFalse(accepts(filter, "<Envelope xmlns=\"urn:other\"/>"));
+        Assert.assertFalse(accepts(filter, "<transformed/>"));
+        Assert.assertFalse(accepts(filter, "[1, 2]"));
+    }
+
+    private static boolean accepts(ContentFilter filter, String body) {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        return filter.acceptsBody(bytes, bytes.length);
+    }
+
+    private static HttpHeaders headers(String contentType) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.CONTENT_TYPE, contentType);
+        return headers;
+    }
+}
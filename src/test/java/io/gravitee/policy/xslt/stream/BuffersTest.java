@@ -0,0 +1,54 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xslt.stream;
+
+import io.gravitee.gateway.api.buffer.Buffer;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author GraviteeSource Team
+ */
+public class BuffersTest {
+
+    @Test
+    public void shouldGatherWritesToBufferNotBackedByByteBuf() throws Exception {
+        Buffer buffer = mock(Buffer.class);
+        when(buffer.getNativeBuffer()).thenReturn(new Object());
+
+        OutputStream output = Buffers.outputStream(buffer);
+        for (int i = 0; i < 10000; i++) {
+            output.write('a');
+        }
+        output.write("bc".getBytes(StandardCharsets.UTF_8), 0, 2);
+        output.flush();
+
+        ArgumentCaptor<Buffer> appended = ArgumentCaptor.forClass(Buffer.class);
+        verify(buffer, times(2)).appendBuffer(appended.capture());
+        Assert.assertEquals(8192, appended.getAllValues().get(0).length());
+        Assert.assertEquals(10002 - 8192, appended.getAllValues().get(1).length());
+        Assert.assertTrue(appended.getAllValues().get(1).toString().endsWith("abc"));
+    }
+}
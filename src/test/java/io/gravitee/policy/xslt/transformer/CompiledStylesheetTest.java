@@ -0,0 +1,170 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xslt.transformer;
+
+import io.gravitee.policy.xslt.configuration.ReferenceDocument;
+import net.sf.saxon.om.NodeInfo;
+import net.sf.saxon.om.TreeInfo;
+import net.sf.saxon.s9api.QName;
+import net.sf.saxon.s9api.XdmAtomicValue;
+import net.sf.saxon.s9api.XdmNode;
+import net.sf.saxon.s9api.XsltTransformer;
+import net.sf.saxon.trans.KeyManager;
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.xml.transform.stream.StreamSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.reflect.Field;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * @author GraviteeSource Team
+ */
+public class CompiledStylesheetTest {
+
+    @Test
+    public void shouldReuseReleasedTransformer() throws Exception {
+        CompiledStylesheet stylesheet = new TransformerFactory(TransformerFactory.DEFAULT_MAX_ENTRIES)
+                .getTemplate(loadResource("/io/gravitee/policy/xslt/stylesheet.xsl"));
+
+        XsltTransformer transformer = stylesheet.acquire();
+        stylesheet.release(transformer);
+
+        Assert.assertSame(transformer, stylesheet.acquire());
+    }
+
+    @Test
+    public void shouldClearParametersOnRelease() throws Exception {
+        CompiledStylesheet stylesheet = new TransformerFactory(TransformerFactory.DEFAULT_MAX_ENTRIES)
+                .getTemplate(loadResource("/io/gravitee/policy/xslt/stylesheet.xsl"));
+
+        XsltTransformer transformer = stylesheet.acquire();
+        transformer.setParameter(new QName("my-parameter"), new XdmAtomicValue("my-value"));
+        stylesheet.release(transformer);
+
+        Assert.assertNull(stylesheet.acquire().getParameter(new QName("my-parameter")));
+    }
+
+    @Test
+    public void shouldNotShareTransformerBetweenConcurrentCallers() throws Exception {
+        CompiledStylesheet stylesheet = new TransformerFactory(TransformerFactory.DEFAULT_MAX_ENTRIES)
+                .getTemplate(loadResource("/io/gravitee/policy/xslt/stylesheet.xsl"));
+
+        XsltTransformer first = stylesheet.acquire();
+        XsltTransformer second = stylesheet.acquire();
+
+        Assert.assertNotSame(first, second);
+    }
+
+    @Test
+    public void shouldForgetLoadedDocumentsOnRelease() throws Exception {
+        TransformerFactory factory = new TransformerFactory(TransformerFactory.DEFAULT_MAX_ENTRIES);
+        CompiledStylesheet stylesheet = factory.getTemplate(
+                "<xsl:stylesheet version=\"2.0\" xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\">" +
+                "<xsl:output method=\"text\"/><xsl:template match=\"/\">" +
+                "<xsl:value-of select=\"document('reference.xml')\"/></xsl:template></xsl:stylesheet>");
+        XdmNode source = factory.getProcessor().newDocumentBuilder().build(new StreamSource(new StringReader("<a/>")));
+        XdmNode reference = factory.getProcessor().newDocumentBuilder()
+                .build(new StreamSource(new StringReader("<reference>value</reference>")));
+
+        XsltTransformer transformer = stylesheet.acquire();
+        transformer.setURIResolver((href, base) -> reference.getUnderlyingNode());
+        Assert.assertEquals("value", transform(factory, transformer, source));
+        stylesheet.release(transformer);
+
+        XsltTransformer reused = stylesheet.acquire();
+        Assert.assertSame(transformer, reused);
+        XdmNode other = factory.getProcessor().newDocumentBuilder()
+                .build(new StreamSource(new StringReader("<reference>other</reference>")));
+        reused.setURIResolver((href, base) -> other.getUnderlyingNode());
+        Assert.assertEquals("other", transform(factory, reused, source));
+    }
+
+    @Test
+    public void shouldKeepKeyIndexesOfReferenceDocumentsOnRelease() throws Exception {
+        // Reference documents are built with the configuration of the shared processor
+        TransformerFactory factory = TransformerFactory.getInstance();
+        CompiledStylesheet stylesheet = factory.getTemplate(
+                "<xsl:stylesheet version=\"2.0\" xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\">" +
+                "<xsl:output method=\"text\"/><xsl:key name=\"code\" match=\"code\" use=\"@id\"/>" +
+                "<xsl:template match=\"/\"><xsl:value-of select=\"key('code', 'FR', document('codes.xml'))\"/>" +
+                "</xsl:template></xsl:stylesheet>");
+        XdmNode source = factory.getProcessor().newDocumentBuilder().build(new StreamSource(new StringReader("<a/>")));
+
+        ReferenceDocument codes = new ReferenceDocument();
+        codes.setName("codes.xml");
+        codes.setContent("<codes><code id=\"FR\">France</code></codes>");
+        ReferenceDocuments documents = ReferenceDocuments.of(Collections.singletonList(codes));
+        TreeInfo tree = ((NodeInfo) documents.resolve("codes.xml", null)).getTreeInfo();
+
+        XsltTransformer transformer = stylesheet.acquire();
+        transformer.setURIResolver(documents);
+        Assert.assertEquals("France", transform(factory, transformer, source));
+        stylesheet.release(transformer);
+
+        Assert.assertTrue(keyIndexes(stylesheet).containsKey(tree));
+    }
+
+    /**
+     * Saxon does not expose the key indexes it keeps for each document.
+     */
+    private static Map<?, ?> keyIndexes(CompiledStylesheet stylesheet) throws Exception {
+        KeyManager keyManager = stylesheet.getExecutable().getUnderlyingCompiledStylesheet().getTopLevelPackage()
+                .getKeyManager();
+        Field docIndexes = KeyManager.class.getDeclaredField("docIndexes");
+        docIndexes.setAccessible(true);
+        return (Map<?, ?>) docIndexes.get(keyManager);
+    }
+
+    private static String transform(TransformerFactory factory, XsltTransformer transformer, XdmNode source) throws Exception {
+        StringWriter output = new StringWriter();
+        transformer.setInitialContextNode(source);
+        transformer.setDestination(factory.getProcessor().newSerializer(output));
+        transformer.transform();
+        return output.toString();
+    }
+
+    @Test
+    public void shouldDeriveContentTypeFromOutputDeclaration() throws Exception {
+        TransformerFactory factory = new TransformerFactory(TransformerFactory.DEFAULT_MAX_ENTRIES);
+
+        Assert.assertEquals("application/xml; charset=UTF-8", factory.getTemplate(stylesheet("")).getContentType());
+        Assert.assertEquals("application/xml; charset=ISO-8859-1",
+                factory.getTemplate(stylesheet("<xsl:output encoding=\"ISO-8859-1\"/>")).getContentType());
+        Assert.assertEquals("application/json; charset=UTF-8",
+                factory.getTemplate(stylesheet("<xsl:output method=\"json\"/>")).getContentType());
+        Assert.assertEquals("text/csv; charset=UTF-8",
+                factory.getTemplate(stylesheet("<xsl:output method=\"text\" media-type=\"text/csv\"/>")).getContentType());
+    }
+
+    private static String stylesheet(String output) {
+        return "<xsl:stylesheet version=\"3.0\" xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\">" + output +
+                "<xsl:template match=\"/\"/></xsl:stylesheet>";
+    }
+
+    private String loadResource(String resource) throws IOException {
+        InputStream is = this.getClass().getResourceAsStream(resource);
+        StringWriter sw = new StringWriter();
+        IOUtils.copy(is, sw, "UTF-8");
+        return sw.toString();
+    }
+}
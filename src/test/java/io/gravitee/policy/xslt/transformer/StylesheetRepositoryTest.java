@@ -0,0 +1,114 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xslt.transformer;
+
+import net.sf.saxon.s9api.SaxonApiException;
+import net.sf.saxon.s9api.XsltTransformer;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.xml.transform.stream.StreamSource;
+import java.io.File;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * @author GraviteeSource Team
+ */
+public class StylesheetRepositoryTest {
+
+    private static final String STYLESHEET =
+            "<xsl:stylesheet version=\"2.0\" xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\">" +
+            "<xsl:include href=\"common.xsl\"/>" +
+            "<xsl:output method=\"text\"/>" +
+            "<xsl:template match=\"/\"><xsl:call-template name=\"greet\"><xsl:with-param name=\"name\" select=\"string(/name)\"/></xsl:call-template></xsl:template>" +
+            "</xsl:stylesheet>";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldIncludeModulesFromClasspath() throws Exception {
+        TransformerFactory factory = new TransformerFactory(TransformerFactory.DEFAULT_MAX_ENTRIES,
+                StylesheetRepository.of("classpath:io/gravitee/policy/xslt/repository"));
+
+        CompiledStylesheet compiled = factory.getTemplate(STYLESHEET);
+
+        Assert.assertEquals("Hello world", transform(factory, compiled, "<name>world</name>"));
+        Assert.assertTrue(compiled.dependsOn("repository:/common.xsl"));
+        Assert.assertTrue(compiled.dependsOn("repository:/lib/greeting.xsl"));
+    }
+
+    @Test(expected = SaxonApiException.class)
+    public void shouldRejectModulesOutsideOfRepository() throws Exception {
+        TransformerFactory factory = new TransformerFactory(TransformerFactory.DEFAULT_MAX_ENTRIES,
+                StylesheetRepository.of("classpath:io/gravitee/policy/xslt/repository"));
+
+        factory.getTemplate(STYLESHEET.replace("common.xsl", "../stylesheet.xsl"));
+    }
+
+    @Test
+    public void shouldCompileAgainWhenModuleIsUpdated() throws Exception {
+        File lib = folder.newFolder("lib");
+        write(new File(folder.getRoot(), "common.xsl"), read("common.xsl"));
+        File greeting = new File(lib, "greeting.xsl");
+        write(greeting, read("lib/greeting.xsl"));
+
+        DirectoryStylesheetRepository repository = new DirectoryStylesheetRepository(folder.getRoot().getPath());
+        try {
+            TransformerFactory factory = new TransformerFactory(TransformerFactory.DEFAULT_MAX_ENTRIES, repository);
+            CompiledStylesheet compiled = factory.getTemplate(STYLESHEET);
+            Assert.assertEquals("Hello world", transform(factory, compiled, "<name>world</name>"));
+
+            write(greeting, read("lib/greeting.xsl").replace("'Hello'", "'Bonjour'"));
+
+            long deadline = System.currentTimeMillis() + 30000;
+            while (!compiled.isStale() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+
+            Assert.assertTrue(compiled.isStale());
+            CompiledStylesheet recompiled = factory.getTemplate(STYLESHEET);
+            Assert.assertNotSame(compiled, recompiled);
+            Assert.assertEquals("Bonjour world", transform(factory, recompiled, "<name>world</name>"));
+        } finally {
+            repository.close();
+        }
+    }
+
+    private static String transform(TransformerFactory factory, CompiledStylesheet compiled, String xml) throws Exception {
+        StringWriter writer = new StringWriter();
+        XsltTransformer transformer = compiled.acquire();
+        transformer.setSource(new StreamSource(new StringReader(xml)));
+        transformer.setDestination(factory.getProcessor().newSerializer(writer));
+        transformer.transform();
+        compiled.release(transformer);
+        return writer.toString();
+    }
+
+    private String read(String module) throws Exception {
+        return new String(Files.readAllBytes(new File(getClass()
+                .getResource("/io/gravitee/policy/xslt/repository/" + module).toURI()).toPath()), StandardCharsets.UTF_8);
+    }
+
+    private static void write(File file, String content) throws Exception {
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xslt.transformer;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+/**
+ * @author GraviteeSource Team
+ */
+public class StylesheetStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldCompileStoredStylesheetsOnStartup() throws Exception {
+        String stylesheet = loadResource("/io/gravitee/policy/xslt/stylesheet.xsl");
+
+        StylesheetStore store = new StylesheetStore(folder.getRoot().getPath());
+        new TransformerFactory(TransformerFactory.DEFAULT_MAX_ENTRIES, null, store)
+                .getTemplate(TransformerFactory.key(stylesheet), stylesheet, true);
+        store.flush();
+
+        // Gateway restart
+        TransformerFactory factory = new TransformerFactory(TransformerFactory.DEFAULT_MAX_ENTRIES, null,
+                new StylesheetStore(folder.getRoot().getPath()));
+        Assert.assertEquals(1, factory.preload());
+        Assert.assertEquals(1, factory.getStats().getCompilations());
+
+        factory.getTemplate(stylesheet);
+        Assert.assertEquals(1, factory.getStats().getCompilations());
+        Assert.assertEquals(1, factory.getStats().getHits());
+    }
+
+    @Test
+    public void shouldNotStoreStylesheetsResultingFromExpressionLanguage() throws Exception {
+        String stylesheet = loadResource("/io/gravitee/policy/xslt/stylesheet.xsl");
+
+        StylesheetStore store = new StylesheetStore(folder.getRoot().getPath());
+        new TransformerFactory(TransformerFactory.DEFAULT_MAX_ENTRIES, null, store)
+                .getTemplate(TransformerFactory.key(stylesheet), stylesheet, false);
+        store.flush();
+
+        Assert.assertTrue(store.load(TransformerFactory.DEFAULT_MAX_ENTRIES).isEmpty());
+    }
+
+    @Test
+    public void shouldDeleteInvalidStylesheets() throws Exception {
+        StylesheetStore store = new StylesheetStore(folder.getRoot().getPath());
+        Path tampered = store.getDirectory().resolve(TransformerFactory.key("<xsl:stylesheet/>") + ".xsl");
+        Files.write(tampered, "<other/>".getBytes(StandardCharsets.UTF_8));
+        File otherVersion = folder.newFolder("saxon-9.6.0.1");
+        Files.write(new File(otherVersion, "stylesheet.xsl").toPath(), "<xsl:stylesheet/>".getBytes(StandardCharsets.UTF_8));
+
+        Assert.assertTrue(store.load(TransformerFactory.DEFAULT_MAX_ENTRIES).isEmpty());
+        Assert.assertFalse(Files.exists(tampered));
+        Assert.assertFalse(otherVersion.exists());
+    }
+
+    @Test
+    public void shouldNotDeleteForeignDirectories() throws Exception {
+        File foreign = folder.newFolder("9.6.0.1");
+        Files.write(new File(foreign, "stylesheet.xsl").toPath(), "<xsl:stylesheet/>".getBytes(StandardCharsets.UTF_8));
+        File prefixed = folder.newFolder("saxon-data");
+        Files.write(new File(prefixed, "data.json").toPath(), "{}".getBytes(StandardCharsets.UTF_8));
+        File data = folder.newFile("data.txt");
+
+        StylesheetStore store = new StylesheetStore(folder.getRoot().getPath());
+        Path unrelated = store.getDirectory().resolve("notes.txt");
+        Files.write(unrelated, "notes".getBytes(StandardCharsets.UTF_8));
+
+        Assert.assertTrue(store.load(TransformerFactory.DEFAULT_MAX_ENTRIES).isEmpty());
+        Assert.assertTrue(new File(foreign, "stylesheet.xsl").exists());
+        Assert.assertTrue(new File(prefixed, "data.json").exists());
+        Assert.assertTrue(data.exists());
+        Assert.assertTrue(Files.exists(unrelated));
+    }
+
+    @Test
+    public void shouldKeepMostRecentStylesheets() throws Exception {
+        StylesheetStore store = new StylesheetStore(folder.getRoot().getPath());
+        for (int i = 0; i < 3; i++) {
+            String stylesheet = "<xsl:stylesheet version=\"2.0\" xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\"><!-- " + i + " --></xsl:stylesheet>";
+            Path file = store.getDirectory().resolve(TransformerFactory.key(stylesheet) + ".xsl");
+            Files.write(file, stylesheet.getBytes(StandardCharsets.UTF_8));
+            Files.setLastModifiedTime(file, FileTime.fromMillis(1000L * (i + 1)));
+        }
+
+        Assert.assertEquals(2, store.load(2).size());
+        Assert.assertEquals(2, Files.list(store.getDirectory()).count());
+    }
+
+    private String loadResource(String resource) throws Exception {
+        InputStream is = this.getClass().getResourceAsStream(resource);
+        StringWriter sw = new StringWriter();
+        IOUtils.copy(is, sw, "UTF-8");
+        return sw.toString();
+    }
+}
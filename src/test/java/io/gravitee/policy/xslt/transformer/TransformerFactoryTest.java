@@ -0,0 +1,122 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xslt.transformer;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * @author GraviteeSource Team
+ */
+public class TransformerFactoryTest {
+
+    @Test
+    public void shouldCompileStylesheetOnce() throws Exception {
+        TransformerFactory factory = new TransformerFactory(TransformerFactory.DEFAULT_MAX_ENTRIES);
+        String stylesheet = loadResource("/io/gravitee/policy/xslt/stylesheet.xsl");
+
+        CompiledStylesheet first = factory.getTemplate(stylesheet);
+        CompiledStylesheet second = factory.getTemplate(stylesheet);
+
+        Assert.assertSame(first, second);
+        Assert.assertEquals(1, factory.getStats().getCompilations());
+        Assert.assertEquals(1, factory.getStats().getMisses());
+        Assert.assertEquals(1, factory.getStats().getHits());
+    }
+
+    @Test
+    public void shouldCompileStylesheetOnceWithConcurrentCallers() throws Exception {
+        TransformerFactory factory = new TransformerFactory(TransformerFactory.DEFAULT_MAX_ENTRIES);
+        String stylesheet = loadResource("/io/gravitee/policy/xslt/stylesheet.xsl");
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Callable<CompiledStylesheet>> calls = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                calls.add(() -> factory.getTemplate(stylesheet));
+            }
+
+            CompiledStylesheet expected = null;
+            for (Future<CompiledStylesheet> future : executor.invokeAll(calls)) {
+                if (expected == null) {
+                    expected = future.get();
+                }
+                Assert.assertSame(expected, future.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Assert.assertEquals(1, factory.getStats().getCompilations());
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedStylesheet() throws Exception {
+        TransformerFactory factory = new TransformerFactory(2);
+        String stylesheet = loadResource("/io/gravitee/policy/xslt/stylesheet.xsl");
+
+        CompiledStylesheet first = factory.getTemplate(stylesheet);
+        factory.getTemplate(stylesheet + "<!-- 2 -->");
+        factory.getTemplate(stylesheet);
+        CompiledStylesheet third = factory.getTemplate(stylesheet + "<!-- 3 -->");
+
+        // The stylesheet just compiled must be kept, the least recently used one is evicted instead
+        Assert.assertSame(third, factory.getTemplate(stylesheet + "<!-- 3 -->"));
+        Assert.assertSame(first, factory.getTemplate(stylesheet));
+        Assert.assertEquals(2, factory.size());
+        Assert.assertEquals(1, factory.getStats().getEvictions());
+        Assert.assertEquals(3, factory.getStats().getCompilations());
+
+        factory.getTemplate(stylesheet + "<!-- 2 -->");
+        Assert.assertEquals(4, factory.getStats().getCompilations());
+    }
+
+    @Test
+    public void shouldNotCacheInvalidStylesheet() throws Exception {
+        TransformerFactory factory = new TransformerFactory(TransformerFactory.DEFAULT_MAX_ENTRIES);
+        String stylesheet = loadResource("/io/gravitee/policy/xslt/stylesheet_invalid.xsl");
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                factory.getTemplate(stylesheet);
+                Assert.fail("Invalid stylesheet must not compile");
+            } catch (Exception ex) {
+                // Expected
+            }
+        }
+
+        Assert.assertEquals(0, factory.size());
+        Assert.assertEquals(2, factory.getStats().getCompilations());
+    }
+
+    private String loadResource(String resource) throws IOException {
+        InputStream is = this.getClass().getResourceAsStream(resource);
+        StringWriter sw = new StringWriter();
+        IOUtils.copy(is, sw, "UTF-8");
+        return sw.toString();
+    }
+}
@@ -0,0 +1,45 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xslt.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author GraviteeSource Team
+ */
+public class Murmur3Test {
+
+    @Test
+    public void shouldHashUtf16CodeUnits() {
+        // Reference MurmurHash3 x64 128 (seed 0) of the UTF-16LE encoded strings
+        Assert.assertEquals("00000000000000000000000000000000", Murmur3.hash128(""));
+        Assert.assertEquals("96a698500b4e98bdb278c9bfc754677d", Murmur3.hash128("a"));
+        Assert.assertEquals("ee2ee18fe1bfd3877b927262d8c336c4", Murmur3.hash128("hello"));
+        Assert.assertEquals("a9fd21ccac144d44a2768ccebde581e9", Murmur3.hash128("hello world!"));
+        Assert.assertEquals("81c621a9882b7371ef666594afec2d16",
+                Murmur3.hash128("éàü€ stylesheet <xsl:stylesheet/> 0123456789abcdef"));
+    }
+
+    @Test
+    public void shouldHashWholeMultiByteText() {
+        // Only differ after the first text.length() UTF-8 bytes
+        String first = "éééé first";
+        String second = "éééé other";
+
+        Assert.assertNotEquals(Murmur3.hash128(first), Murmur3.hash128(second));
+    }
+}
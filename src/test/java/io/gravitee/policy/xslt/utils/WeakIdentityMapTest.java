@@ -0,0 +1,49 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xslt.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author GraviteeSource Team
+ */
+public class WeakIdentityMapTest {
+
+    @Test
+    public void shouldCompareKeysByIdentity() {
+        WeakIdentityMap<String, Integer> map = new WeakIdentityMap<>();
+        String key = new String("key");
+
+        Assert.assertNull(map.putIfAbsent(key, 1));
+        Assert.assertEquals(Integer.valueOf(1), map.putIfAbsent(key, 2));
+        Assert.assertEquals(Integer.valueOf(1), map.get(key));
+        Assert.assertNull(map.get(new String("key")));
+    }
+
+    @Test
+    public void shouldRemoveEntriesOfCollectedKeys() throws InterruptedException {
+        WeakIdentityMap<Object, Integer> map = new WeakIdentityMap<>();
+        map.putIfAbsent(new Object(), 1);
+
+        for (int i = 0; i < 50 && map.size() > 0; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+
+        Assert.assertEquals(0, map.size());
+    }
+}
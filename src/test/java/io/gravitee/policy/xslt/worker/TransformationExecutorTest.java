@@ -0,0 +1,139 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xslt.worker;
+
+import io.gravitee.gateway.api.stream.exception.TransformationException;
+import io.gravitee.policy.xslt.stream.CountingInputStream;
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * @author GraviteeSource Team
+ */
+public class TransformationExecutorTest {
+
+    @Test
+    public void shouldRejectWhenQueueIsFull() throws Exception {
+        TransformationExecutor executor = new TransformationExecutor(1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        // One running task, one queued task
+        executor.execute(() -> await(release), 0, result -> {}, error -> {});
+        executor.execute(() -> await(release), 0, result -> {}, error -> {});
+
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        executor.execute(() -> "rejected", 0, result -> Assert.fail(), failure::set);
+        release.countDown();
+
+        Assert.assertTrue(failure.get() instanceof RejectedTransformationException);
+    }
+
+    @Test
+    public void shouldFailOnTimeout() throws Exception {
+        TransformationExecutor executor = new TransformationExecutor(1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch failed = new CountDownLatch(1);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        executor.execute(() -> await(release), 50, result -> Assert.fail(), error -> {
+            failure.set(error);
+            failed.countDown();
+        });
+
+        Assert.assertTrue(failed.await(5, TimeUnit.SECONDS));
+        release.countDown();
+        Assert.assertTrue(failure.get() instanceof TransformationException);
+        Assert.assertFalse(failure.get() instanceof RejectedTransformationException);
+    }
+
+    @Test
+    public void shouldCallHandlersOnCallerContext() throws Exception {
+        TransformationExecutor executor = new TransformationExecutor(1, 1);
+        Vertx vertx = Vertx.vertx();
+        try {
+            Context context = vertx.getOrCreateContext();
+            CountDownLatch completed = new CountDownLatch(2);
+            AtomicReference<Context> successContext = new AtomicReference<>();
+            AtomicReference<Context> timeoutContext = new AtomicReference<>();
+            CountDownLatch release = new CountDownLatch(1);
+
+            context.runOnContext(ignored -> {
+                executor.execute(() -> "done", 0, result -> {
+                    successContext.set(Vertx.currentContext());
+                    completed.countDown();
+                }, error -> Assert.fail());
+                executor.execute(() -> await(release), 50, result -> Assert.fail(), error -> {
+                    timeoutContext.set(Vertx.currentContext());
+                    completed.countDown();
+                });
+            });
+
+            Assert.assertTrue(completed.await(5, TimeUnit.SECONDS));
+            release.countDown();
+            Assert.assertSame(context, successContext.get());
+            Assert.assertSame(context, timeoutContext.get());
+        } finally {
+            vertx.close();
+        }
+    }
+
+    @Test
+    public void shouldReleaseWorkerReadingBodyOnTimeout() throws Exception {
+        TransformationExecutor executor = new TransformationExecutor(1, 1);
+        CountDownLatch completed = new CountDownLatch(1);
+
+        // Endless body: the worker is only released if reading is interrupted
+        executor.execute(() -> readFully(new CountingInputStream(new InputStream() {
+            @Override
+            public int read() {
+                return 'a';
+            }
+        })), 50, result -> Assert.fail(), error -> {});
+        executor.execute(() -> "next", 0, result -> completed.countDown(), error -> Assert.fail());
+
+        Assert.assertTrue(completed.await(5, TimeUnit.SECONDS));
+    }
+
+    private static long readFully(InputStream input) {
+        try {
+            byte[] buffer = new byte[8192];
+            long count = 0;
+            for (int read; (read = input.read(buffer, 0, buffer.length)) != -1; ) {
+                count += read;
+            }
+            return count;
+        } catch (IOException ioe) {
+            throw new IllegalStateException(ioe);
+        }
+    }
+
+    private static String await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        return "done";
+    }
+}
@@ -0,0 +1,9 @@
+<?xml version="1.0" encoding="UTF-8"?>
+<xsl:stylesheet version="2.0" xmlns:xsl="http://www.w3.org/1999/XSL/Transform">
+    <xsl:include href="lib/greeting.xsl"/>
+
+    <xsl:template name="greet">
+        <xsl:param name="name"/>
+        <xsl:value-of select="concat($greeting, ' ', $name)"/>
+    </xsl:template>
+</xsl:stylesheet>
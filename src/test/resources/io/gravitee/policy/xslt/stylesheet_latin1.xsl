@@ -0,0 +1,13 @@
+<?xml version="1.0" encoding="UTF-8"?>
+<xsl:stylesheet version="1.0" xmlns:xsl="http://www.w3.org/1999/XSL/Transform">
+
+    <xsl:output method="xml" encoding="ISO-8859-1" indent="no"/>
+
+    <xsl:template match="/">
+        <artists>
+            <xsl:for-each select="catalog/cd">
+                <artist><xsl:value-of select="artist"/></artist>
+            </xsl:for-each>
+        </artists>
+    </xsl:template>
+</xsl:stylesheet>
@@ -0,0 +1,16 @@
+<?xml version="1.0" encoding="UTF-8"?>
+<xsl:stylesheet version="2.0" xmlns:xsl="http://www.w3.org/1999/XSL/Transform"
+                xmlns:xs="http://www.w3.org/2001/XMLSchema" exclude-result-prefixes="xs">
+
+    <xsl:output method="xml" indent="no"/>
+
+    <xsl:param name="count" as="xs:integer" select="0"/>
+
+    <xsl:template match="/">
+        <result>
+            <xsl:for-each select="catalog/cd[position() &lt;= $count]">
+                <title><xsl:value-of select="title"/></title>
+            </xsl:for-each>
+        </result>
+    </xsl:template>
+</xsl:stylesheet>